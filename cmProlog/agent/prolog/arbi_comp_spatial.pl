@@ -74,6 +74,7 @@
 :- use_module(library('semweb/rdf_db')).
 :- use_module(library('rdfs_computable')).
 :- use_module(library('knowrob_objects')).
+:- use_module(library('prolog/arbi_geometry')).
 :- use_module(library('knowrob_owl')).
 
 
@@ -651,6 +652,16 @@ comp_RCCD_C3(Object, Robot, D,RCCD) :-
     rdf(Robot_Matrix,'http://knowrob.org/kb/knowrob.owl#m13',literal(type(_,O2y))),atom_to_term(O2y,RY,_),
     rdf(Robot,'http://knowrob.org/kb/knowrob.owl#depthOfObject', literal(type(_,Pd))),atom_to_term(Pd,RD,_),
     rdf(Robot,'http://knowrob.org/kb/knowrob.owl#widthOfObject', literal(type(_,Pw))),atom_to_term(Pw,RW,_),
+    rccd_cone(RX, RY, OX, OY, D, RD, RW, RCCD).
+
+% Java kernel (arbi_geometry) when enabled, otherwise rccd_cone_pl/8
+rccd_cone(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+    geometry_native, !,
+    geometry_rccd_cone(RX, RY, OX, OY, D, RD, RW, RCCD).
+rccd_cone(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+    rccd_cone_pl(RX, RY, OX, OY, D, RD, RW, RCCD).
+
+rccd_cone_pl(RX, RY, OX, OY, D, RD, RW, RCCD) :-
     Min_RY = RY - 0.5*RW,
     Min_RX = RX - 0.5*RD,
     Max_RY = RY + 0.5*RW,
@@ -774,9 +785,19 @@ comp_RCCD_Hybrid(Object, Robot, RCCD) :-
 
 
 
-    rotation(RX,RY,OX,OY,-D,X1,Y1),
     rdf(Robot,'http://knowrob.org/kb/knowrob.owl#depthOfObject', literal(type(_,Pd))),atom_to_term(Pd,RD,_),
     rdf(Robot,'http://knowrob.org/kb/knowrob.owl#widthOfObject', literal(type(_,Pw))),atom_to_term(Pw,RW,_),
+    rccd_hybrid(RX, RY, OX, OY, D, RD, RW, RCCD).
+
+% Java kernel (arbi_geometry) when enabled, otherwise rccd_hybrid_pl/8
+rccd_hybrid(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+    geometry_native, !,
+    geometry_rccd_hybrid(RX, RY, OX, OY, D, RD, RW, RCCD).
+rccd_hybrid(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+    rccd_hybrid_pl(RX, RY, OX, OY, D, RD, RW, RCCD).
+
+rccd_hybrid_pl(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+    rotation(RX,RY,OX,OY,-D,X1,Y1),
     Min_RY = RY - 0.5*RW,
     Min_RX = RX - 0.5*RD,
     Max_RY = RY + 0.5*RW,
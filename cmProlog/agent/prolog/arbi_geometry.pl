@@ -0,0 +1,104 @@
+/** <module> Java geometry kernel for the spatial predicates
+
+  comp_RCCD_Hybrid/3 and comp_RCCD_C3/4 of arbi_comp_spatial.pl and vertex/3
+  and intersects/3 of predicate_isaac.pl do their floating-point geometry with
+  many intermediate terms (rotation/7, getM/2, getFragment/4, the check_*Area/4
+  cones, matrix_multiply/3). The predicates here compute the same results in
+  kgu.agent.demo.prolog.Geometry through JPL, one call per relation.
+
+  The Prolog versions stay in place as rccd_hybrid_pl/8, rccd_cone_pl/8,
+  vertex_pl/3 and intersect_ratio_pl/3. The callers use the Java kernel only
+  after geometry_enable/0 (Geometry.enable() at startup, -Dcm.geometry.native),
+  and test/geometryDiffTest compares both on random inputs.
+
+@license BSD
+
+*/
+:- module(arbi_geometry,
+    [
+    geometry_enable/0,
+    geometry_native/0,
+    geometry_rccd_hybrid/8,
+    geometry_rccd_cone/8,
+    geometry_vertex/3,
+    geometry_intersect_ratio/3
+    ]).
+
+:- use_module(library(jpl)).
+
+:- dynamic
+    geometry_native/0.
+
+
+geometry_enable :-
+      (   geometry_native
+      ->  true
+      ;   assertz(geometry_native)
+      ).
+
+
+%% geometry_rccd_hybrid(+RX, +RY, +OX, +OY, +D, +RD, +RW, ?RCCD) is semidet.
+%
+% Direction of the object (OX, OY) seen from a robot at (RX, RY) with heading
+% D and depth/width RD/RW. Like the once/1 in comp_RCCD_Hybrid/3, an unbound
+% RCCD gets the first matching region and a bound one may match any of them.
+%
+geometry_rccd_hybrid(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+      geometry_floats([RX, RY, OX, OY, D, RD, RW], Args),
+      jpl_call('kgu.agent.demo.prolog.Geometry', rccdHybrid, Args, Array),
+      jpl_array_to_list(Array, Regions),
+      once(member(RCCD, Regions)).
+
+%% geometry_rccd_cone(+RX, +RY, +OX, +OY, +D, +RD, +RW, ?RCCD) is semidet.
+%
+% As geometry_rccd_hybrid/8 with the cone-only rules of comp_RCCD_C3/4.
+%
+geometry_rccd_cone(RX, RY, OX, OY, D, RD, RW, RCCD) :-
+      geometry_floats([RX, RY, OX, OY, D, RD, RW], Args),
+      jpl_call('kgu.agent.demo.prolog.Geometry', rccdCone, Args, Array),
+      jpl_array_to_list(Array, Regions),
+      once(member(RCCD, Regions)).
+
+
+%% geometry_vertex(+Pose:list, +Size:list, -Vertice:list) is det.
+%
+% Pose is [X, Y, Z, A, B, C | _], Size is [SX, SY, SZ | _]; Vertice is the
+% list of the 8 corners [X, Y, Z] in the order of vertex/3.
+%
+geometry_vertex([X, Y, Z, A, B, C|_], [SX, SY, SZ|_], Vertice) :-
+      geometry_floats([X, Y, Z, A, B, C], Pose),
+      geometry_floats([SX, SY, SZ], Size),
+      jpl_new(array(double), Pose, PoseArray),
+      jpl_new(array(double), Size, SizeArray),
+      jpl_call('kgu.agent.demo.prolog.Geometry', vertex, [PoseArray, SizeArray], Array),
+      jpl_array_to_list(Array, Flat),
+      geometry_points(Flat, Vertice).
+
+%% geometry_intersect_ratio(+SpaceVertice:list, +ObjectVertice:list, -IntersectPer) is semidet.
+%
+% Overlap of the object box with the hand space, as computed by intersects/3.
+%
+geometry_intersect_ratio(SpaceVertice, ObjectVertice, IntersectPer) :-
+      geometry_diagonal(SpaceVertice, Space),
+      geometry_diagonal(ObjectVertice, Object),
+      jpl_new(array(double), Space, SpaceArray),
+      jpl_new(array(double), Object, ObjectArray),
+      jpl_call('kgu.agent.demo.prolog.Geometry', intersectRatio, [SpaceArray, ObjectArray], Array),
+      jpl_array_to_list(Array, [IntersectPer]).
+
+
+% corners 0 and 6 of a vertex/3 list, flattened
+geometry_diagonal(Vertice, Diagonal) :-
+      nth0(0, Vertice, [X0, Y0, Z0|_]),
+      nth0(6, Vertice, [X6, Y6, Z6|_]),
+      geometry_floats([X0, Y0, Z0, X6, Y6, Z6], Diagonal).
+
+geometry_points([], []).
+geometry_points([X, Y, Z|Rest], [[X, Y, Z]|Points]) :-
+      geometry_points(Rest, Points).
+
+geometry_floats(Values, Floats) :-
+      maplist(geometry_float, Values, Floats).
+
+geometry_float(Value, Float) :-
+      Float is float(Value).
@@ -0,0 +1,296 @@
+/** <module> Incremental matching of multi-condition subscription rules
+
+  A subscription rule with more than one fact condition used to fire on the
+  assert of its first triple and then backtrack through rdf/3 for the others,
+  so every assert re-evaluated the whole rule against the store (and a rule
+  whose first triple arrived before the others never fired).
+
+  This module keeps such rules in a Rete network fed by the triple deltas
+  seen by the arbi_subscription hook:
+
+    * an alpha node per distinct triple pattern rdf(S,P,O), indexed by P.
+      It has no memory of its own: the RDF store is the alpha memory, and a
+      new token asks it with rdf/3 for the triples that extend it, with the
+      variables of the token already bound, so rdf_db answers from its
+      indexes instead of the network copying every matching triple;
+    * a beta node per distinct prefix of triple patterns. Its tokens (lists
+      of triples that satisfy the whole prefix) are kept under their term
+      hash, and the tokens of its parent are kept a second time under the
+      hash of the values of the join variables, the variables its last
+      pattern shares with the patterns before it;
+    * a production on the last beta node of each rule.
+
+  Rules that start with the same patterns (up to variable renaming) share
+  their alpha and beta nodes. An assert visits only the alpha nodes of its
+  predicate and, on each beta node, only the parent tokens with the same
+  join key; a retract removes the tokens that used the triple the same way.
+  The work is proportional to the delta and not to the size of the store
+  or of the memories. Goals of a rule that are not rdf/3 (expressions,
+  computable predicates) are tested once a token reaches the production.
+
+  A production fires for matches completed after it was added, like the
+  monitor clauses it replaces; matches already in the store do not fire.
+  When a triple of a match is retracted the production is called again
+  with retract, so a subscription can withdraw what it notified.
+
+@license BSD
+
+*/
+:- module(arbi_rete,
+    [
+    rete_add/3,
+    rete_remove/1,
+    rete_assert/3,
+    rete_retract/3,
+    rete_resync/0,
+    rete_graphs/1,
+    rete_statistics/4
+    ]).
+
+:- use_module(library('semweb/rdf_db')).
+:- use_module(library(lists)).
+
+:- dynamic
+    alpha_node/3,       % alpha_node(P, Alpha, Pattern)
+    beta_node/4,        % beta_node(Node, Parent, Alpha, Prefix)
+    beta_key/4,         % beta_key(Node, Left, Right, Values)
+    beta_mem/3,         % beta_mem(Node, Hash, Token)
+    left_mem/3,         % left_mem(Node, Key, ParentToken)
+    production/4,       % production(Node, Id, Patterns, Goal)
+    rete_graph/1.
+
+:- thread_local
+    pending/1.
+
+
+%% rete_add(+Id, +Patterns:list, :Goal) is det.
+%
+% Patterns is a non-empty list of rdf(S,P,O) terms. call(Goal, assert) runs
+% once for every new combination of triples that matches all of them, with
+% the variables of Patterns bound, and call(Goal, retract) when one of the
+% triples of a combination is retracted.
+%
+rete_add(Id, Patterns, Goal) :-
+      Patterns = [_|_],
+      with_mutex(arbi_rete,
+                 ( beta_path(Patterns, root, [], Node),
+                   assertz(production(Node, Id, Patterns, Goal)) )).
+
+beta_path([], Node, _, Node).
+beta_path([Pattern|Patterns], Parent, Prefix0, Node) :-
+      append(Prefix0, [Pattern], Prefix),
+      alpha(Pattern, Alpha),
+      (   beta_node(Node0, Parent, Alpha, Existing),
+          Existing =@= Prefix
+      ->  Node1 = Node0
+      ;   flag(arbi_rete_node, Node1, Node1 + 1),
+          assertz(beta_node(Node1, Parent, Alpha, Prefix)),
+          term_variables(Prefix0, LeftVars),
+          term_variables(Pattern, RightVars),
+          shared(RightVars, LeftVars, Values),
+          assertz(beta_key(Node1, Prefix0, Pattern, Values)),
+          forall(parent_token(Parent, Token0),
+                 left_activate(Node1, Token0, false))
+      ),
+      beta_path(Patterns, Node1, Prefix, Node).
+
+alpha(Pattern, Alpha) :-
+      Pattern = rdf(_, P, _),
+      % a variable P must not be bound by the lookup
+      (   var(P) -> Key = _ ; Key = P ),
+      (   alpha_node(Key, Alpha0, Existing),
+          Existing =@= Pattern
+      ->  Alpha = Alpha0
+      ;   flag(arbi_rete_node, Alpha, Alpha + 1),
+          assertz(alpha_node(P, Alpha, Pattern))
+      ).
+
+shared([], _, []).
+shared([V|Vs], Others, Shared) :-
+      (   member(W, Others),
+          W == V
+      ->  Shared = [V|Shared1]
+      ;   Shared = Shared1
+      ),
+      shared(Vs, Others, Shared1).
+
+% the store as alpha memory: only the graphs of rete_graphs/1
+stored(rdf(S, P, O)) :-
+      \+ rete_graph(_), !,
+      distinct(rdf(S, P, O), rdf(S, P, O)).
+stored(rdf(S, P, O)) :-
+      distinct(rdf(S, P, O), ( rete_graph(Graph), rdf(S, P, O, Graph) )).
+
+
+%% rete_remove(+Id) is det.
+%
+% Removes the production of Id and the nodes no other production uses.
+%
+rete_remove(Id) :-
+      with_mutex(arbi_rete,
+                 forall(retract(production(Node, Id, _, _)),
+                        prune(Node))).
+
+prune(root) :- !.
+prune(Node) :-
+      (   production(Node, _, _, _)
+      ;   beta_node(_, Node, _, _)
+      ), !.
+prune(Node) :-
+      retract(beta_node(Node, Parent, Alpha, _)),
+      retractall(beta_key(Node, _, _, _)),
+      retractall(beta_mem(Node, _, _)),
+      retractall(left_mem(Node, _, _)),
+      (   beta_node(_, _, Alpha, _)
+      ->  true
+      ;   retractall(alpha_node(_, Alpha, _))
+      ),
+      prune(Parent).
+
+
+%% rete_assert(+S, +P, +O) is det.
+%
+% Feeds an asserted triple to the network and fires the productions it
+% completes, outside the network lock.
+%
+rete_assert(_, P, _) :-
+      \+ alpha_node(P, _, _), !.
+rete_assert(S, P, O) :-
+      Triple = rdf(S, P, O),
+      with_mutex(arbi_rete,
+                 forall(( alpha_node(P, Alpha, Pattern),
+                          \+ Pattern \= Triple ),
+                        right_activate(Alpha, Triple))),
+      run_pending.
+
+run_pending :-
+      forall(retract(pending(Goal)),
+             catch(Goal, E, print_message(warning, E))).
+
+% the new triple against the parent tokens with the same join key, on every
+% beta node of Alpha
+right_activate(Alpha, Triple) :-
+      forall(( beta_node(Node, _, Alpha, Prefix),
+               right_key(Node, Triple, Key),
+               left_mem(Node, Key, Token0),
+               join(Prefix, Token0, Triple, Token) ),
+             add_token(Node, Token, true)).
+
+% a parent token reaching Node: remember it under its join key and extend it
+% with the stored triples that match the last pattern of Node
+left_activate(Node, Token0, Fire) :-
+      left_key(Node, Token0, Key),
+      assertz(left_mem(Node, Key, Token0)),
+      beta_node(Node, _, _, Prefix),
+      forall(( join(Prefix, Token0, Triple, Token),
+               stored(Triple) ),
+             add_token(Node, Token, Fire)).
+
+% Fire: call the productions of a new token (not while seeding a node)
+add_token(Node, Token, Fire) :-
+      term_hash(Token, Hash),
+      (   beta_mem(Node, Hash, Token)
+      ->  true
+      ;   assertz(beta_mem(Node, Hash, Token)),
+          (   Fire == true
+          ->  forall(production(Node, _, Token, Goal),
+                     assertz(pending(call(Goal, assert))))
+          ;   true
+          ),
+          forall(beta_node(Child, Node, _, _),
+                 left_activate(Child, Token, Fire))
+      ).
+
+parent_token(root, Token) :- !,
+      Token = [].
+parent_token(Parent, Token) :-
+      beta_mem(Parent, _, Token).
+
+% Token: the triples of Token0 followed by Triple, if they satisfy Prefix
+join(Prefix, Token0, Triple, Token) :-
+      copy_term(Prefix, Token),
+      append(Token0, [Triple], Token).
+
+% the hash of the join variables of Node, bound by a parent token or by a
+% triple of its last pattern
+left_key(Node, Token0, Key) :-
+      beta_key(Node, Token0, _, Values), !,
+      term_hash(Values, Key).
+
+right_key(Node, Triple, Key) :-
+      beta_key(Node, _, Triple, Values), !,
+      term_hash(Values, Key).
+
+
+%% rete_retract(+S, +P, +O) is det.
+%
+% Removes the tokens that used the triple and calls the productions of the
+% removed tokens with retract, outside the network lock. Nothing changes
+% while the triple is still stored in another graph.
+%
+rete_retract(_, P, _) :-
+      \+ alpha_node(P, _, _), !.
+rete_retract(S, P, O) :-
+      stored(rdf(S, P, O)), !.
+rete_retract(S, P, O) :-
+      Triple = rdf(S, P, O),
+      with_mutex(arbi_rete,
+                 forall(( alpha_node(P, Alpha, Pattern),
+                          \+ Pattern \= Triple,
+                          beta_node(Node, _, Alpha, Prefix),
+                          right_key(Node, Triple, Key),
+                          left_mem(Node, Key, Token0),
+                          join(Prefix, Token0, Triple, Token) ),
+                        remove_token(Node, Token, Triple))),
+      run_pending.
+
+% Token and the tokens built on it; Triple is no longer in the store, the
+% other triples of the child tokens are
+remove_token(Node, Token, Triple) :-
+      term_hash(Token, Hash),
+      retract(beta_mem(Node, Hash, Token)), !,
+      forall(production(Node, _, Token, Goal),
+             assertz(pending(call(Goal, retract)))),
+      forall(beta_node(Child, Node, _, Prefix),
+             ( left_key(Child, Token, Key),
+               retractall(left_mem(Child, Key, Token)),
+               forall(( join(Prefix, Token, Next, ChildToken),
+                        (   Next = Triple
+                        ;   stored(Next)
+                        ) ),
+                      remove_token(Child, ChildToken, Triple)) )).
+remove_token(_, _, _).
+
+
+%% rete_resync is det.
+%
+% Rebuilds the memories from the store, after changes the network did not
+% see (a suspended bulk load). Nothing fires.
+%
+rete_resync :-
+      with_mutex(arbi_rete,
+                 ( retractall(beta_mem(_, _, _)),
+                   retractall(left_mem(_, _, _)),
+                   forall(beta_node(Node, root, _, _),
+                          left_activate(Node, [], false)) )).
+
+
+%% rete_graphs(+Graphs:list) is det.
+%
+% Joins only see triples of Graphs, the graphs whose deltas are fed to the
+% network; [] means every graph. Rebuilds the memories.
+%
+rete_graphs(Graphs) :-
+      with_mutex(arbi_rete,
+                 ( retractall(rete_graph(_)),
+                   forall(member(Graph, Graphs), assertz(rete_graph(Graph))) )),
+      rete_resync.
+
+
+%% rete_statistics(-Alpha, -Beta, -Productions, -Tokens) is det.
+%
+rete_statistics(Alpha, Beta, Productions, Tokens) :-
+      aggregate_all(count, alpha_node(_, _, _), Alpha),
+      aggregate_all(count, beta_node(_, _, _, _), Beta),
+      aggregate_all(count, production(_, _, _, _), Productions),
+      aggregate_all(count, beta_mem(_, _, _), Tokens).
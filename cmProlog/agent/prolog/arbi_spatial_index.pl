@@ -0,0 +1,89 @@
+/** <module> Proximity queries over the Java spatial grid index
+
+  kgu.agent.demo.prolog.SpatialIndex keeps the latest position of every robot
+  in a uniform grid, fed by LatestPerceptionAction for each robotPosition it
+  asserts. The predicates here call it through JPL, so a radius, k-nearest or
+  in-polygon query only visits the cells around the query point instead of
+  comparing every pair of perceptions in the RDF store.
+
+  Ids are robot IRIs as they appear in the RDF store.
+
+  The existing proximity predicates are not rewritten on top of it, since
+  the index cannot give their answers: nearBy/3 of predicate_isaac.pl has
+  no distance condition, near/2 and far/2 compare the 3D poses of the
+  current object perceptions (currentObjectPose/2), which the 2D index does
+  not hold, and the check_*Area predicates test one given point against a
+  cone and search nothing. New fleet-wide queries (robotsWithin/3, the
+  si_* predicates) use the index; test.spatialIndexTest checks it against a
+  full scan.
+
+@license BSD
+
+*/
+:- module(arbi_spatial_index,
+    [
+    si_position/3,
+    si_within/4,
+    si_nearest/4,
+    si_in_polygon/2,
+    robotsWithin/3
+    ]).
+
+:- use_module(library(jpl)).
+
+
+si_index(Index) :-
+      jpl_call('kgu.agent.demo.prolog.SpatialIndex', getInstance, [], Index).
+
+
+%% si_position(+Id, -X, -Y) is semidet.
+%
+si_position(Id, X, Y) :-
+      si_index(Index),
+      jpl_call(Index, position, [Id], Array),
+      Array \== @(null),
+      jpl_array_to_list(Array, [X, Y]).
+
+
+%% si_within(+X, +Y, +Radius, -Ids:list) is det.
+%
+% Ids within Radius of (X, Y), nearest first.
+%
+si_within(X, Y, Radius, Ids) :-
+      Xf is float(X), Yf is float(Y), Rf is float(Radius),
+      si_index(Index),
+      jpl_call(Index, radius, [Xf, Yf, Rf], Array),
+      jpl_array_to_list(Array, Ids).
+
+
+%% si_nearest(+X, +Y, +K, -Ids:list) is det.
+%
+% The K ids closest to (X, Y), nearest first.
+%
+si_nearest(X, Y, K, Ids) :-
+      Xf is float(X), Yf is float(Y),
+      si_index(Index),
+      jpl_call(Index, nearest, [Xf, Yf, K], Array),
+      jpl_array_to_list(Array, Ids).
+
+
+%% si_in_polygon(+Polygon:list, -Ids:list) is det.
+%
+% Polygon is a list of vertices [[X1, Y1], [X2, Y2], ...].
+%
+si_in_polygon(Polygon, Ids) :-
+      findall(F, ( member([X, Y], Polygon), member(V, [X, Y]), F is float(V) ), Flat),
+      jpl_new(array(double), Flat, Vertices),
+      si_index(Index),
+      jpl_call(Index, inPolygon, [Vertices], Array),
+      jpl_array_to_list(Array, Ids).
+
+
+%% robotsWithin(+Robot, +Radius, -Others:list) is semidet.
+%
+% Other robots within Radius of Robot's latest position.
+%
+robotsWithin(Robot, Radius, Others) :-
+      si_position(Robot, X, Y),
+      si_within(X, Y, Radius, Ids),
+      exclude(==(Robot), Ids, Others).
@@ -0,0 +1,271 @@
+/** <module> Subscription registry for context monitor rules
+
+  SubscribeAction used to assert every compiled subscription rule as another
+  monitor/1 clause, so each RDF assert was unified against every rule ever
+  subscribed and a subscription could never be taken back.
+
+  Here each rule is stored once under its id, indexed by the predicate of its
+  trigger triple. The rdf_monitor/2 hook only looks up the triggers of the
+  asserted predicate (plus the triggers whose predicate is a variable), so the
+  cost of an assert does not grow with the number of subscriptions, and every
+  matching rule fires independently of the others. subscription_remove/1
+  retracts a rule again.
+
+  Rules with more than one rdf/3 condition are matched incrementally by
+  arbi_rete instead; the hook feeds it the asserted, retracted and updated
+  triples.
+
+  For edge-triggered subscriptions the retractions are notified as well: a
+  retracted trigger triple, or a retracted triple of a Rete match, runs the
+  rule body again with subscription_notify/3 reporting the result as
+  withdrawn, so the dispatcher can send (removed ...). An update is a
+  retract of the old triple followed by an assert of the new one.
+
+  The hook is only switched on while there are subscriptions, and it can be
+  scoped to a set of named graphs (subscription_graphs/1); the Rete memories
+  then only hold triples of those graphs. The graphs are configured rather
+  than taken from the subscriptions, because the compiled rules leave the
+  graph of their trigger unbound; SubscriptionRegistry passes
+  -Dcm.subscription.graphs, by default robotPerception, the graph
+  LatestPerceptionAction writes to. It is suspended in the thread that
+  runs an rdf_load, or that calls subscription_suspend/0 until
+  subscription_resume/0, so ontology and semantic map loads return from the
+  hook at once; changes made by other threads meanwhile are still matched.
+  When the suspension of a thread ends the Rete memories are rebuilt once
+  from the store. The matches the suspended changes completed are not
+  notified, by design: a load is not a perception.
+
+  Rules come from MonitorRuleCompiler / ContextMonitorComputablePaser and have
+  one of the heads monitor(assert(S,P,O), DB) or monitor(assert(S,P,O,DB)).
+  Their bodies run in module user and end with subscription_notify/3, which
+  hands the match to the preregistered Java NotificationDispatcher together
+  with the id of the rule that fired.
+
+@license BSD
+
+*/
+:- module(arbi_subscription,
+    [
+    subscription_add/4,
+    subscription_remove/1,
+    subscription_graphs/1,
+    subscription_suspend/0,
+    subscription_resume/0,
+    subscription_set_dispatcher/1,
+    subscription_notify/3,
+    subscription_statistics/2
+    ]).
+
+:- use_module(library('semweb/rdf_db')).
+:- use_module(library(jpl)).
+:- use_module(library('prolog/arbi_rete')).
+
+:- dynamic
+    subscription_trigger/4,
+    subscription_id/2,
+    subscription_edge/1,
+    subscription_graph/1,
+    subscription_dispatcher/1.
+
+:- thread_local
+    suspended/1.
+
+
+%% subscription_add(+Id, +Rule, +EdgeTriggered:boolean, -Predicate) is semidet.
+%
+% Rule is (monitor(...) :- Body). Replaces an earlier rule with the same Id.
+% Predicate is the trigger predicate, unbound if the rule triggers on any.
+% Retractions are only notified to EdgeTriggered rules.
+%
+subscription_add(Id, (Head :- Body), EdgeTriggered, P) :-
+      trigger_event(Head, Event), !,
+      Event = assert(S, P, O, _),
+      body_patterns(Body, Patterns, Goals),
+      with_mutex(arbi_subscription,
+                 ( remove(Id),
+                   (   Patterns == []
+                   ->  assertz(subscription_trigger(P, Id, Event, user:Body))
+                   ;   rete_add(Id, [rdf(S, P, O)|Patterns],
+                                arbi_subscription:fire(Id, user:Goals))
+                   ),
+                   assertz(subscription_id(Id, P)),
+                   (   EdgeTriggered == true
+                   ->  assertz(subscription_edge(Id))
+                   ;   true
+                   ),
+                   update_mask )).
+
+trigger_event(monitor(assert(S, P, O), DB), assert(S, P, O, DB)).
+trigger_event(monitor(assert(S, P, O, DB)), assert(S, P, O, DB)).
+
+% the rdf/3 goals of a rule body, and the other goals in their order
+body_patterns(Body, Patterns, Goals) :-
+      phrase(conjunction(Body), List),
+      split_patterns(List, Patterns, Rest),
+      list_conjunction(Rest, Goals).
+
+conjunction(G) --> { var(G) }, !, [G].
+conjunction((A, B)) --> !, conjunction(A), conjunction(B).
+conjunction(G) --> [G].
+
+split_patterns([], [], []).
+split_patterns([G|Gs], [G|Patterns], Rest) :-
+      nonvar(G), G = rdf(_, _, _), !,
+      split_patterns(Gs, Patterns, Rest).
+split_patterns([G|Gs], Patterns, [G|Rest]) :-
+      split_patterns(Gs, Patterns, Rest).
+
+list_conjunction([], true).
+list_conjunction([G], G) :- !.
+list_conjunction([G|Gs], (G, Conjunction)) :-
+      list_conjunction(Gs, Conjunction).
+
+% off without subscriptions
+update_mask :-
+      (   \+ subscription_id(_, _)
+      ->  Mask = [-all]
+      ;   Mask = [-all, +assert, +retract, +update, +load]
+      ),
+      rdf_monitor(subscription_on_change, Mask).
+
+
+%% subscription_graphs(+Graphs:list) is det.
+%
+% Only changes in Graphs reach the subscriptions; [] means every graph.
+%
+subscription_graphs(Graphs) :-
+      with_mutex(arbi_subscription,
+                 ( retractall(subscription_graph(_)),
+                   forall(member(Graph, Graphs), assertz(subscription_graph(Graph))) )),
+      rete_graphs(Graphs).
+
+
+%% subscription_suspend is det.
+%% subscription_resume is det.
+%
+% Bulk changes of the calling thread between the two are not monitored.
+% Calls nest.
+%
+subscription_suspend :-
+      (   retract(suspended(N))
+      ->  N1 is N + 1
+      ;   N1 = 1
+      ),
+      assertz(suspended(N1)).
+
+subscription_resume :-
+      (   retract(suspended(N))
+      ->  (   N > 1
+          ->  N1 is N - 1,
+              assertz(suspended(N1))
+          ;   rete_resync
+          )
+      ;   true
+      ).
+
+
+%% subscription_remove(+Id) is det.
+%
+subscription_remove(Id) :-
+      with_mutex(arbi_subscription,
+                 ( remove(Id),
+                   update_mask )).
+
+remove(Id) :-
+      forall(retract(subscription_id(Id, P)),
+             retractall(subscription_trigger(P, Id, _, _))),
+      retractall(subscription_edge(Id)),
+      rete_remove(Id).
+
+
+%% subscription_statistics(-Subscriptions, -Predicates) is det.
+%
+% Predicates is the number of distinct trigger predicates.
+%
+subscription_statistics(Subscriptions, Predicates) :-
+      aggregate_all(count, subscription_id(_, _), Subscriptions),
+      aggregate_all(set(P), (subscription_id(_, P), nonvar(P)), Set),
+      length(Set, Predicates).
+
+
+% first argument indexing on P: only the rules of the asserted predicate
+subscription_on_change(load(begin(_), _)) :- !,
+      subscription_suspend.
+subscription_on_change(load(end(_), _)) :- !,
+      subscription_resume.
+subscription_on_change(_) :-
+      suspended(_), !.
+subscription_on_change(Event) :-
+      event_graph(Event, Graph),
+      \+ watched_graph(Graph), !.
+subscription_on_change(assert(S, P, O, DB)) :- !,
+      triggers(assert, S, P, O, DB),
+      rete_assert(S, P, O).
+subscription_on_change(retract(S, P, O, DB)) :- !,
+      triggers(retract, S, P, O, DB),
+      rete_retract(S, P, O).
+subscription_on_change(update(S, P, O, DB, Action)) :-
+      updated(Action, rdf(S, P, O), rdf(S1, P1, O1)), !,
+      triggers(retract, S, P, O, DB),
+      rete_retract(S, P, O),
+      triggers(assert, S1, P1, O1, DB),
+      rete_assert(S1, P1, O1).
+subscription_on_change(_).
+
+triggers(assert, S, P, O, DB) :- !,
+      forall(subscription_trigger(P, Id, assert(S, P, O, DB), Body),
+             fire(Id, Body, assert)).
+triggers(retract, S, P, O, DB) :-
+      forall(( subscription_trigger(P, Id, assert(S, P, O, DB), Body),
+               subscription_edge(Id) ),
+             fire(Id, Body, retract)).
+
+updated(subject(S1), rdf(_, P, O), rdf(S1, P, O)).
+updated(predicate(P1), rdf(S, _, O), rdf(S, P1, O)).
+updated(object(O1), rdf(S, P, _), rdf(S, P, O1)).
+
+event_graph(assert(_, _, _, DB), Graph) :- db_graph(DB, Graph).
+event_graph(retract(_, _, _, DB), Graph) :- db_graph(DB, Graph).
+event_graph(update(_, _, _, DB, _), Graph) :- db_graph(DB, Graph).
+
+db_graph(Graph:_, Graph) :- !.
+db_graph(Graph, Graph).
+
+watched_graph(_) :-
+      \+ subscription_graph(_), !.
+watched_graph(Graph) :-
+      subscription_graph(Graph).
+
+% Event: assert, or retract for a match that no longer holds
+fire(Id, _, retract) :-
+      \+ subscription_edge(Id), !.
+fire(Id, Body, Event) :-
+      b_setval(arbi_subscription_id, Id),
+      b_setval(arbi_subscription_event, Event),
+      catch(ignore(once(Body)),
+            E,
+            print_message(warning, format("subscription ~w : ~p", [Id, E]))).
+
+
+%% subscription_set_dispatcher(+Dispatcher) is det.
+%
+% Dispatcher is the JPL reference of NotificationDispatcher.getInstance().
+%
+subscription_set_dispatcher(Dispatcher) :-
+      retractall(subscription_dispatcher(_)),
+      assertz(subscription_dispatcher(Dispatcher)).
+
+
+%% subscription_notify(+SA, +PA, +OA) is semidet.
+%
+% Called at the end of a rule body; queues the match (or its withdrawal)
+% and returns at once.
+%
+subscription_notify(SA, PA, OA) :-
+      b_getval(arbi_subscription_id, Id),
+      b_getval(arbi_subscription_event, Event),
+      subscription_dispatcher(Dispatcher), !,
+      (   Event == retract
+      ->  jpl_call(Dispatcher, withdraw, [Id, SA, PA, OA], _)
+      ;   jpl_call(Dispatcher, fire, [Id, SA, PA, OA], _)
+      ).
@@ -0,0 +1,98 @@
+/** <module> Opt-in tabling for rule predicates
+
+  Rule predicates such as stationVertex/2, priorVertex/2 and moveType/3 are
+  re-derived from the RDF store by every query that uses them. tabling_enable/2
+  tables a configured list of them at runtime so repeated subgoals are answered
+  from the tables.
+
+  The RDF store is foreign, so SWI-Prolog's incremental tabling cannot see its
+  changes by itself. An rdf_monitor/2 hook bumps a global generation whenever a
+  triple is asserted, retracted or updated outside the volatile graphs (the
+  perception graphs that change every cycle and that the tabled predicates must
+  not depend on), and once at the end of each rdf_load. Tables are private to
+  each thread, so every tabled predicate is wrapped to call tabling_sync/0
+  first, which drops the calling thread's tables when the generation has
+  moved. The check is in the predicate itself and not in the query that uses
+  it, so monitor rule bodies, the ingestion thread and GUI actions never see
+  stale answers either. Calls made while a table is being filled see the
+  generation the outer call already synced to and do nothing.
+
+@license BSD
+
+*/
+:- module(arbi_tabling,
+    [
+    tabling_enable/2,
+    tabling_sync/0,
+    tabling_invalidate/0,
+    tabling_statistics/2
+    ]).
+
+:- use_module(library('semweb/rdf_db')).
+:- use_module(library(prolog_wrap)).
+
+:- dynamic
+    tabled_predicate/1,
+    volatile_graph/1.
+
+
+%% tabling_enable(+Predicates:list, +VolatileGraphs:list) is det.
+%
+% Predicates are Module:Name/Arity terms, e.g. [predicate:stationVertex/2].
+% The sync wrapper is installed after table/1, so it is the outer one and runs
+% before the table is consulted.
+%
+tabling_enable(Predicates, VolatileGraphs) :-
+      forall(member(Graph, VolatileGraphs), assertz(volatile_graph(Graph))),
+      forall(member(Module:Name/Arity, Predicates), tabling_add(Module, Name, Arity)),
+      rdf_monitor(tabling_on_change, [-all, +assert, +retract, +update, +load]).
+
+tabling_add(Module, Name, Arity) :-
+      catch(( table(Module:Name/Arity),
+              functor(Head, Name, Arity),
+              wrap_predicate(Module:Head, arbi_tabling_sync, Wrapped,
+                             ( arbi_tabling:tabling_sync, Wrapped )),
+              assertz(tabled_predicate(Module:Name/Arity)) ),
+            E,
+            print_message(warning, E)).
+
+
+%% tabling_sync is det.
+%
+% Drops the calling thread's tables if the RDF store changed since its last call.
+%
+tabling_sync :-
+      flag(arbi_tabling_generation, Generation, Generation),
+      (   nb_current(arbi_tabling_seen, Generation)
+      ->  true
+      ;   forall(tabled_predicate(Module:Name/Arity),
+                 ( functor(Head, Name, Arity),
+                   abolish_table_subgoals(Module:Head) )),
+          nb_setval(arbi_tabling_seen, Generation)
+      ).
+
+tabling_invalidate :-
+      flag(arbi_tabling_generation, Generation, Generation + 1).
+
+tabling_statistics(Generation, Tabled) :-
+      flag(arbi_tabling_generation, Generation, Generation),
+      findall(P, tabled_predicate(P), Tabled).
+
+
+tabling_on_change(load(end(_), _)) :- !,
+      tabling_invalidate.
+tabling_on_change(load(_, _)) :- !.
+tabling_on_change(Event) :-
+      event_graph(Event, Graph),
+      (   volatile_graph(Graph)
+      ->  true
+      ;   tabling_invalidate
+      ), !.
+tabling_on_change(_).
+
+event_graph(assert(_, _, _, DB), Graph) :- db_graph(DB, Graph).
+event_graph(retract(_, _, _, DB), Graph) :- db_graph(DB, Graph).
+event_graph(update(_, _, _, DB, _), Graph) :- db_graph(DB, Graph).
+
+db_graph(Graph:_, Graph) :- !.
+db_graph(Graph, Graph).
@@ -0,0 +1,122 @@
+/** <module> Materialized views for hot robot-state predicates
+
+  currentRobotBodyXY/2, hwanSong/2, nearBy/3 and faceToFace/2 of
+  predicate_isaac.pl look up the latest VisualRobotBodyPerception of every robot
+  and parse its matrix literals on every call. This module keeps one row per
+  robot instead:
+
+    mv_current(Robot, Position, Heading)
+
+  Position is xy(X, Y) and Heading is heading(H) when the robot's current
+  perception (currentRobotBodyPerception/2) has the m03/m13 or m12 literal,
+  and none otherwise. A robot's positions (robotPosition) and headings
+  (robotDegree) arrive as separate perceptions, so as in predicate_isaac.pl a
+  robot whose current perception is a position has no heading, and the other
+  way round. mv_lookup/1 gives the same answers as the predicate_isaac.pl
+  rules (test.viewEquivalenceTest compares them).
+
+  deadLock/2 is not a view: predicate_isaac.pl calls nearBy/2 there, which
+  does not exist, and a view must not change that answer.
+
+  LatestPerceptionAction calls mv_update/1 after it asserts a
+  robotPosition/robotDegree perception, which reads the robot's current
+  perception once and replaces only that robot's row. Updates retract the
+  old row before they assert the new one, so mv_lookup/1 takes the same
+  mutex and collects its answers before it returns them; the table has one
+  row per robot, so the copy is small.
+
+@license BSD
+
+*/
+:- module(arbi_view,
+    [
+    mv_declared/1,
+    mv_lookup/1,
+    mv_update/1,
+    mv_rebuild/0
+    ]).
+
+:- use_module(library('semweb/rdfs')).
+:- use_module(library('semweb/rdf_db')).
+:- use_module(library(lists)).
+
+:- rdf_db:rdf_register_ns(knowrob,      'http://knowrob.org/kb/knowrob.owl#',      [keep(true)]).
+
+:- dynamic
+    mv_current/3.
+
+
+mv_declared(currentRobotBodyXY/2).
+mv_declared(hwanSong/2).
+mv_declared(nearBy/3).
+mv_declared(faceToFace/2).
+
+
+mv_lookup(Goal) :-
+      with_mutex(arbi_view, findall(Goal, mv_lookup_(Goal), Answers)),
+      member(Goal, Answers).
+
+mv_lookup_(currentRobotBodyXY(Robot, [X, Y])) :-
+      mv_current(Robot, xy(X, Y), _).
+mv_lookup_(hwanSong(Robot, [X, Y])) :-
+      mv_current(Robot, xy(X, Y), _).
+% nearBy(R1, R2, Pose): both have a current perception, Pose is R1's position
+mv_lookup_(nearBy(Robot1, Robot2, [X, Y])) :-
+      mv_current(Robot1, xy(X, Y), _),
+      mv_current(Robot2, _, _).
+% faceToFace(A, B): two robots whose current perceptions have different headings
+mv_lookup_(faceToFace(RobotA, RobotB)) :-
+      mv_current(RobotA, _, heading(HA)),
+      mv_current(RobotB, _, heading(HB)),
+      RobotA \= RobotB,
+      HA \= HB.
+
+
+%% mv_update(+Robot) is det.
+%
+% Replaces the row of Robot from its current perception in the store.
+%
+mv_update(Robot) :-
+      with_mutex(arbi_view, mv_update_(Robot)).
+
+mv_update_(Robot) :-
+      rdfs_individual_of(Robot, knowrob:'Robot'), !,
+      retractall(mv_current(Robot, _, _)),
+      mv_store(Robot).
+mv_update_(_).
+
+
+%% mv_rebuild is det.
+%
+% Recomputes every row from the RDF store (after the OWL files are loaded).
+%
+mv_rebuild :-
+      with_mutex(arbi_view, mv_rebuild_).
+
+mv_rebuild_ :-
+      retractall(mv_current(_, _, _)),
+      forall(rdfs_individual_of(Robot, knowrob:'Robot'),
+             mv_store(Robot)).
+
+mv_store(Robot) :-
+      once(predicate:currentRobotBodyPerception(Robot, Perception)), !,
+      (   rdf(Perception, knowrob:eventOccursAt, Matrix)
+      ->  mv_position(Matrix, Position),
+          mv_heading(Matrix, Heading)
+      ;   Position = none,
+          Heading = none
+      ),
+      assertz(mv_current(Robot, Position, Heading)).
+mv_store(_).
+
+mv_position(Matrix, xy(X, Y)) :-
+      rdf(Matrix, 'http://knowrob.org/kb/knowrob.owl#m03', literal(type(_, X0))),
+      rdf(Matrix, 'http://knowrob.org/kb/knowrob.owl#m13', literal(type(_, Y0))), !,
+      atom_to_term(X0, X, _),
+      atom_to_term(Y0, Y, _).
+mv_position(_, none).
+
+mv_heading(Matrix, heading(H)) :-
+      rdf(Matrix, 'http://knowrob.org/kb/knowrob.owl#m12', literal(type(_, H0))), !,
+      atom_to_term(H0, H, _).
+mv_heading(_, none).
@@ -90,7 +90,7 @@
     nearBy/3,
     deadLock/2,
     hwanSong/2,
-    stationType/2
+    stationType/2
     ]).
 
 set([], []).
@@ -466,7 +466,14 @@ orientation(Orientation, Matrix):-
    
    Matrix = Rzyx.
 
+% Java kernel (arbi_geometry) when enabled, otherwise vertex_pl/3
 vertex(Pose, Size, Vertice):-
+   geometry_native, !,
+   geometry_vertex(Pose, Size, Vertice).
+vertex(Pose, Size, Vertice):-
+   vertex_pl(Pose, Size, Vertice).
+
+vertex_pl(Pose, Size, Vertice):-
    nth0(0, Pose, PoseXO),
    nth0(1, Pose, PoseYO),
    nth0(2, Pose, PoseZO),
@@ -585,6 +592,16 @@ intersects(Hand, Object, IntersectPer):-
    
    %currentSpaceSurroundedByHandVertex(Space, SpacePoint),
    
+   intersect_ratio(SpacePoint, ObjectPoint, IntersectPer).
+
+% Java kernel (arbi_geometry) when enabled, otherwise intersect_ratio_pl/3
+intersect_ratio(SpacePoint, ObjectPoint, IntersectPer):-
+   geometry_native, !,
+   geometry_intersect_ratio(SpacePoint, ObjectPoint, IntersectPer).
+intersect_ratio(SpacePoint, ObjectPoint, IntersectPer):-
+   intersect_ratio_pl(SpacePoint, ObjectPoint, IntersectPer).
+
+intersect_ratio_pl(SpacePoint, ObjectPoint, IntersectPer):-
    nth0(0, SpacePoint, Space1), nth0(0, Space1, X1E), nth0(1, Space1, Y1E), nth0(2, Space1, Z1E),
    nth0(6, SpacePoint, Space2), nth0(0, Space2, X2E), nth0(1, Space2, Y2E), nth0(2, Space2, Z2E),
    nth0(0, ObjectPoint, Object3), nth0(0, Object3, X3E), nth0(1, Object3, Y3E), nth0(2, Object3, Z3E),
@@ -44,12 +44,19 @@ get_file_path(File, Path) :- source_file(Atom_Path), atom_string(Atom_Path, Path
 :- use_module(library('knowrob_coordinates')).
 
 :- use_module(library(clpfd)).
+:- use_module(library(time)).
+:- use_module(library(solution_sequences)).
 :- use_module(library(prolog/matrix)).
+:- use_module(library('prolog/arbi_geometry')).
 
 :- use_module(library('prolog/arbi_comp_robotState')).
 :- use_module(library('prolog/arbi_comp_temporal')).
 :- use_module(library('prolog/arbi_comp_spatial')).
 :- use_module(library('prolog/predicate_isaac')).
+:- use_module(library('prolog/arbi_view')).
+:- use_module(library('prolog/arbi_tabling')).
+:- use_module(library('prolog/arbi_spatial_index')).
+:- use_module(library('prolog/arbi_subscription')).
 :- use_module(library('prolog/arbi_convenient_service')).
 :- use_module(library('prolog/global_variable_social')).
 :- rdf_load(library(owl/isaac_semanticmap)).
@@ -60,13 +67,14 @@ get_file_path(File, Path) :- source_file(Atom_Path), atom_string(Atom_Path, Path
 :- rdf_load(library(owl/arbi_comp_robotState)).
 :- rdf_load(library(owl/arbi_comp_spatial)).
 :- rdf_load(library(owl/arbi_comp_temporal)).
+:- mv_rebuild.
 
 
 :- rdf_db:rdf_register_ns(rdf,    'http://www.w3.org/1999/02/22-rdf-syntax-ns#',     [keep(true)]).
 :- rdf_db:rdf_register_ns(rdfs,    'http://www.w3.org/2000/01/rdf-schema#',     [keep(true)]).
 :- rdf_db:rdf_register_ns(owl,     'http://www.w3.org/2002/07/owl#',            [keep(true)]).
 :- rdf_db:rdf_register_ns(knowrob, 'http://knowrob.org/kb/knowrob.owl#',     [keep(true)]).
-:- rdf_db:rdf_register_ns(arbi, 'http://www.arbi.com/arbi#',     [keep(true)]).
+:- rdf_db:rdf_register_ns(arbi, 'http://www.arbi.com/ontologies/arbi.owl#',     [keep(true)]).
 :- rdf_db:rdf_register_ns(comp_spatial, 'http://knowrob.org/kb/comp_spatial.owl#',     [keep(true)]).
 :- rdf_db:rdf_register_ns(srdl2comp, 'http://knowrob.org/kb/srdl2-comp.owl#',     [keep(true)]).
 
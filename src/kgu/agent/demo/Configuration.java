@@ -18,6 +18,61 @@ public class Configuration {
 	public static GeneralizedList NOTIFY_ROBOT_HUMAN_TRACKING;
 	public static GeneralizedList REQUEST_HUMAN_RECOGNITION;
 
+	// number of SWI-Prolog engines serving onQuery (-Dcm.prolog.engines=N)
+	public static int PROLOG_ENGINE_POOL_SIZE = Integer.getInteger("cm.prolog.engines",
+			Runtime.getRuntime().availableProcessors());
+	// per-query wall-clock deadline (ms) and inference budget for ReasoningQueryAction
+	public static long QUERY_TIME_LIMIT = Long.getLong("cm.query.timeLimit", 5000);
+	public static long QUERY_INFERENCE_LIMIT = Long.getLong("cm.query.inferenceLimit", 10000000);
+	// query scheduling (QueryScheduler): sender substring -> priority class ("*" = any other sender),
+	// class weights of the weighted fair queue, and the classes shed while the expected wait exceeds the target (ms)
+	public static String QUERY_PRIORITY_SENDERS = System.getProperty("cm.query.priority.senders",
+			"TaskManager=planning,GUI=interactive,*=monitoring");
+	public static String QUERY_PRIORITY_WEIGHTS = System.getProperty("cm.query.priority.weights",
+			"planning=8,interactive=4,monitoring=1");
+	public static String QUERY_SHEDDABLE = System.getProperty("cm.query.sheddable", "monitoring");
+	public static long QUERY_LATENCY_TARGET = Long.getLong("cm.query.latencyTarget", 1000);
+	// identical queries that arrive while one is running share its result (SingleFlight)
+	public static boolean QUERY_SINGLE_FLIGHT = Boolean.parseBoolean(System.getProperty("cm.query.singleFlight", "true"));
+	// reorder the goals of multi-goal context queries by estimated cost (QueryPlanner)
+	public static boolean QUERY_REORDER = Boolean.parseBoolean(System.getProperty("cm.query.reorder", "true"));
+	// predicates answered from the arbi_view.pl tables instead of predicate_isaac.pl (empty = off),
+	// e.g. -Dcm.views=currentRobotBodyXY,hwanSong,nearBy,faceToFace
+	public static String MATERIALIZED_VIEWS = System.getProperty("cm.views", "");
+	// opt-in tabling (arbi_tabling.pl), e.g. -Dcm.tabled=stationVertex/2,priorVertex/2,moveType/3
+	// tabled predicates must not depend on the volatile graphs, whose changes don't invalidate the tables
+	public static String TABLED_PREDICATES = System.getProperty("cm.tabled", "");
+	public static String TABLING_VOLATILE_GRAPHS = System.getProperty("cm.tabling.volatileGraphs", "robotPerception");
+	// arbi_comp_spatial / predicate_isaac geometry in Java (Geometry) instead of Prolog arithmetic
+	// off by default until test.geometryDiffTest and test.geometryBenchmark have been run against the Prolog versions
+	public static boolean GEOMETRY_NATIVE = Boolean.parseBoolean(System.getProperty("cm.geometry.native", "false"));
+	// cell size (m) of the Java spatial grid index (SpatialIndex)
+	public static double SPATIAL_CELL_SIZE = Double.parseDouble(System.getProperty("cm.spatial.cellSize", "1.0"));
+	// write-back of query results to the LTM: none | immediate | batched, per predicate as "pred=mode,..."
+	public static String WRITE_BACK_MODE = System.getProperty("cm.writeBack.mode", "batched");
+	public static String WRITE_BACK_PREDICATES = System.getProperty("cm.writeBack.predicates", "");
+	public static long WRITE_BACK_INTERVAL = Long.getLong("cm.writeBack.interval", 500);
+	public static int WRITE_BACK_CACHE_SIZE = Integer.getInteger("cm.writeBack.cacheSize", 10000);
+	// outbound notifications (NotificationOutbox): per-subscriber micro-batch window (ms, 0 = send each one at once),
+	// notifications per message, and per-subscriber queue capacity beyond which the oldest are dropped
+	public static long NOTIFY_BATCH_WINDOW = Long.getLong("cm.notify.batchWindow", 20);
+	public static int NOTIFY_BATCH_MAX = Integer.getInteger("cm.notify.batchMax", 64);
+	public static int NOTIFY_QUEUE_CAPACITY = Integer.getInteger("cm.notify.queueCapacity", 4096);
+	// named graphs whose changes reach the subscriptions (empty = every graph)
+	// subscription rules do not name a graph, so this is not derived from them; robotPerception is the
+	// only graph written at runtime (LatestPerceptionAction), the others are loaded ontologies and maps
+	public static String SUBSCRIPTION_GRAPHS = System.getProperty("cm.subscription.graphs", "robotPerception");
+	// subscriptions notify on every match unless they ask for (trigger "edge"): only new results and (removed ...)
+	public static boolean SUBSCRIPTION_EDGE_TRIGGERED = Boolean.parseBoolean(System.getProperty("cm.subscription.edge", "false"));
+	// default delivery policy of a subscription without (delivery ...): quiet period (ms), longest a result waits for
+	// the quiet period (ms), notifications per second, latest result per subject and predicate only,
+	// minimum change of a numeric literal (0 = off)
+	public static long SUBSCRIPTION_DEBOUNCE = Long.getLong("cm.subscription.debounce", 0);
+	public static long SUBSCRIPTION_MAX_WAIT = Long.getLong("cm.subscription.maxWait", 1000);
+	public static double SUBSCRIPTION_MAX_RATE = Double.parseDouble(System.getProperty("cm.subscription.maxRate", "0"));
+	public static boolean SUBSCRIPTION_LATEST_ONLY = Boolean.parseBoolean(System.getProperty("cm.subscription.latestOnly", "true"));
+	public static double SUBSCRIPTION_MIN_CHANGE = Double.parseDouble(System.getProperty("cm.subscription.minChange", "0"));
+
 	
 	
 	
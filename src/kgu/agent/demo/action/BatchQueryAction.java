@@ -0,0 +1,93 @@
+package kgu.agent.demo.action;
+
+import kgu.agent.demo.actionArgument.BatchQueryArgument;
+import kgu.agent.demo.actionArgument.ReasoningQueryArgument;
+import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
+import kr.ac.uos.ai.arbi.model.Expression;
+import kr.ac.uos.ai.arbi.model.GLFactory;
+import kr.ac.uos.ai.arbi.model.GeneralizedList;
+import kr.ac.uos.ai.arbi.model.parser.ParseException;
+
+// 여러 개의 context 질의를 한 번의 요청으로 처리한다
+//   (batch (query "id1" (context ...)) (query "id2" (context ...)) ...)
+// 결과는 id로 묶어서 한 번에 돌려준다
+//   (batchResult (result "id1" "success" (context ...) ...) (result "id2" "timeout" (error ...)))
+public class BatchQueryAction implements ActionBody {
+
+	public static final String BATCH = "batch";
+
+	private final ReasoningQueryAction queryAction;
+
+	public BatchQueryAction(ReasoningQueryAction queryAction) {
+		this.queryAction = queryAction;
+	}
+
+	public static boolean isBatch(String queryGL) {
+		String gl = queryGL.trim();
+		return gl.startsWith("(" + BATCH) && gl.length() > BATCH.length() + 1
+				&& Character.isWhitespace(gl.charAt(BATCH.length() + 1));
+	}
+
+	@Override
+	public Object execute(Object o) {
+		BatchQueryArgument Log = (BatchQueryArgument) o;
+		double time = System.currentTimeMillis();
+
+		GeneralizedList gl = null;
+		try {
+			gl = GLFactory.newGLFromGLString(Log.getQueryGL());
+		} catch (ParseException e) {
+			e.printStackTrace();
+			return "(error \"parse\" \"invalid batch query\")";
+		}
+
+		StringBuilder batchResult = new StringBuilder("(batchResult");
+		int failed = 0;
+
+		// 하위 질의들은 모두 지금 스레드(같은 Prolog 엔진)에서 차례로 실행된다
+		for (int i = 0; i < gl.getExpressionsSize(); i++) {
+			Expression e = gl.getExpression(i);
+			String id = String.valueOf(i);
+			String result;
+			String status;
+
+			if (e.isGeneralizedList() && e.asGeneralizedList().getExpressionsSize() == 2) {
+				GeneralizedList query = e.asGeneralizedList();
+				if (query.getExpression(0).isValue())
+					id = query.getExpression(0).asValue().stringValue();
+
+				ReasoningQueryArgument argument = new ReasoningQueryArgument(Log.getSender(),
+						query.getExpression(1).toString());
+				try {
+					result = (String) queryAction.execute(argument);
+					status = argument.getStatus();
+				} catch (Exception ex) {
+					// 하위 질의 하나가 실패해도 나머지 결과는 돌려준다
+					ex.printStackTrace();
+					result = "(error \"exception\" \"" + String.valueOf(ex).replace("\"", "'") + "\")";
+					status = "exception";
+				}
+			} else {
+				result = "(error \"parse\" \"expected (query id (context ...))\")";
+				status = "parse";
+			}
+
+			if (!status.equals("success"))
+				failed++;
+
+			batchResult.append(" (result \"").append(id).append("\" \"").append(status).append("\"");
+			if (result != null && !result.isEmpty())
+				batchResult.append(" ").append(result.trim().replace("\n", " "));
+			batchResult.append(")");
+		}
+		batchResult.append(")");
+
+		Log.setQueryCount(gl.getExpressionsSize());
+		Log.setFailedCount(failed);
+		Log.setBatchResult(batchResult.toString());
+		Log.setReasoningTime(System.currentTimeMillis() - time);
+
+		return batchResult.toString();
+	}
+
+}
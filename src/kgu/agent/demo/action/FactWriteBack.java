@@ -0,0 +1,228 @@
+package kgu.agent.demo.action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+import kr.ac.uos.ai.arbi.ltm.DataSource;
+
+// 질의 결과를 ds.assertFact로 LTM에 다시 올리는 부분
+//   none      : 올리지 않는다
+//   immediate : 질의가 끝나면 바로 올린다
+//   batched   : 모아 두었다가 WRITE_BACK_INTERVAL마다 한 번에 올린다
+// 이미 올린 fact와 같은 줄은 다시 올리지 않으므로 같은 질의를 계속 polling해도 broker로는 바뀐 것만 나간다
+// 같은 질의의 전체 결과에서 빠진 fact는 기록에서 지우므로 (retain) 나중에 다시 성립하면 다시 올라간다
+// batched 의 주기적인 flush는 모든 인스턴스가 thread 하나를 같이 쓰고, 종료할 때 shutdown hook이 남은 fact를 올린다
+public class FactWriteBack {
+
+	private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "FactWriteBack");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	// shutdown() 되지 않은 인스턴스
+	private static final Set<FactWriteBack> instances = new LinkedHashSet<FactWriteBack>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushAll();
+			}
+		}, "FactWriteBack-shutdown"));
+	}
+
+	public static final String NONE = "none";
+	public static final String IMMEDIATE = "immediate";
+	public static final String BATCHED = "batched";
+
+	private final DataSource ds;
+	private final String defaultMode;
+	private final Map<String, String> predicateModes = new HashMap<String, String>();
+
+	// 최근에 올린 fact (오래된 것부터 지워지는 LRU)
+	private final Map<String, Boolean> published;
+	// 질의 -> 그 질의의 마지막 전체 결과
+	private final Map<String, Set<String>> lastResults;
+	private final LinkedHashSet<String> pending = new LinkedHashSet<String>();
+	private final ScheduledFuture<?> schedule;
+
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+	private final AtomicLong asserted = new AtomicLong();
+	private final AtomicLong assertCalls = new AtomicLong();
+	private final AtomicLong forgotten = new AtomicLong();
+
+	public FactWriteBack(DataSource ds) {
+		this(ds, Configuration.WRITE_BACK_MODE, Configuration.WRITE_BACK_PREDICATES,
+				Configuration.WRITE_BACK_INTERVAL, Configuration.WRITE_BACK_CACHE_SIZE);
+	}
+
+	// predicateModes : "currentRobotBodyXY=none,deadLock=immediate" 형식
+	public FactWriteBack(DataSource ds, String defaultMode, String predicateModes, long interval, final int cacheSize) {
+		this.ds = ds;
+		this.defaultMode = defaultMode;
+
+		for (String entry : predicateModes.split(",")) {
+			String[] pair = entry.trim().split("=");
+			if (pair.length == 2)
+				this.predicateModes.put(pair[0].trim(), pair[1].trim());
+		}
+
+		published = new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > cacheSize;
+			}
+		};
+
+		lastResults = new LinkedHashMap<String, Set<String>>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+
+		schedule = flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		synchronized (instances) {
+			instances.add(this);
+		}
+	}
+
+	// 살아 있는 모든 인스턴스의 pending을 올린다 (shutdown hook)
+	public static void flushAll() {
+		ArrayList<FactWriteBack> all;
+		synchronized (instances) {
+			all = new ArrayList<FactWriteBack>(instances);
+		}
+		for (FactWriteBack writeBack : all)
+			writeBack.flush();
+	}
+
+	public String getMode(String predicate) {
+		String mode = predicateModes.get(predicate);
+		return mode == null ? defaultMode : mode;
+	}
+
+	// facts : 한 줄에 fact 하나
+	public void publish(String predicate, String facts) {
+		String mode = getMode(predicate);
+		if (mode.equals(NONE))
+			return;
+
+		StringBuilder changed = null;
+		synchronized (this) {
+			for (String fact : facts.split("\n")) {
+				if (fact.isEmpty())
+					continue;
+				offered.incrementAndGet();
+
+				if (published.put(fact, Boolean.TRUE) != null) {
+					suppressed.incrementAndGet();
+					continue;
+				}
+
+				if (mode.equals(BATCHED)) {
+					pending.add(fact);
+				} else {
+					if (changed == null)
+						changed = new StringBuilder();
+					changed.append(fact).append("\n");
+				}
+			}
+		}
+
+		if (changed != null)
+			assertFacts(changed.toString());
+	}
+
+	// 모아 둔 fact를 한 번의 assertFact로 올린다
+	public void flush() {
+		StringBuilder batch;
+		synchronized (this) {
+			if (pending.isEmpty())
+				return;
+			batch = new StringBuilder();
+			for (String fact : pending)
+				batch.append(fact).append("\n");
+			pending.clear();
+		}
+		assertFacts(batch.toString());
+	}
+
+	// query의 전체 결과 (페이지가 아닌 것) : 지난번 결과에 있다가 빠진 fact는 더 이상 성립하지 않으므로
+	// 기록에서 지워서 다시 유도되면 올라가게 한다
+	public void retain(String query, String facts) {
+		Set<String> current = new HashSet<String>();
+		for (String fact : facts.split("\n")) {
+			if (!fact.isEmpty())
+				current.add(fact);
+		}
+		synchronized (this) {
+			Set<String> last = lastResults.put(query, current);
+			if (last == null)
+				return;
+			for (String fact : last) {
+				if (!current.contains(fact)) {
+					published.remove(fact);
+					pending.remove(fact);
+					forgotten.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public void shutdown() {
+		schedule.cancel(false);
+		synchronized (instances) {
+			instances.remove(this);
+		}
+		flush();
+	}
+
+	private void assertFacts(String facts) {
+		try {
+			ds.assertFact(facts);
+			assertCalls.incrementAndGet();
+			asserted.addAndGet(facts.split("\n").length);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+
+		obj.put("mode", defaultMode);
+		obj.put("offered", offered.get());
+		obj.put("suppressed", suppressed.get());
+		obj.put("asserted", asserted.get());
+		obj.put("assertCalls", assertCalls.get());
+		obj.put("forgotten", forgotten.get());
+
+		return obj.toJSONString();
+	}
+
+}
@@ -15,14 +15,13 @@ import org.json.simple.JSONObject;
 import kgu.agent.demo.actionArgument.ContextOntologyMonitorArgument;
 import kgu.agent.demo.actionArgument.GUIArgument;
 import kgu.agent.demo.actionArgument.LowLevelContextMonitorArgument;
+import kgu.agent.demo.prolog.NamespaceCodec;
 import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
 import kr.ac.uos.ai.arbi.ltm.DataSource;
 
 public class GUIAction implements ActionBody {
 	private DataSource ds;
 
-	HashMap<String, String> prefixes = new HashMap<String, String>();
-
 	String basePath;
 	String knowrobFilePath;
 	String graphFilePath;
@@ -42,18 +41,6 @@ public class GUIAction implements ActionBody {
 
 		knowrobFilePath = new File(basePath + "cmProlog/knowrob_library/social_.owl").getAbsolutePath();
 
-		prefixes.put("http://www.arbi.com/ontologies/arbi.owl", "arbi");
-		prefixes.put("http://knowrob.org/kb/comp_spatial.owl", "comp_spatial");
-		prefixes.put("http://knowrob.org/kb/comp_temporal.owl", "comp_temporal");
-		prefixes.put("http://knowrob.org/kb/computable.owl", "computable");
-		prefixes.put("http://purl.org/dc/elements/1.1/", "dc");
-		prefixes.put("http://knowrob.org/kb/knowrob.owl", "knowrob");
-		prefixes.put("http://www.w3.org/2002/07/owl", "owl");
-		prefixes.put("http://www.w3.org/1999/02/22-rdf-syntax-ns", "rdf");
-		prefixes.put("http://www.w3.org/2000/01/rdf-schema", "rdfs");
-		prefixes.put("http://knowrob.org/kb/srdl2-comp.owl", "srdl2comp");
-		prefixes.put("http://www.w3.org/2001/XMLSchema", "xsd");
-
 	}
 
 	@Override
@@ -64,9 +51,32 @@ public class GUIAction implements ActionBody {
 		
 		saveGraph();
 		saveQueryGraph();
+		if (guiArg.getQueryEngine() != null)
+			saveQueryEngine(guiArg.getQueryEngine());
 		return null;
 	}
 
+	// 질의 엔진 풀 상태 (대기열 길이, 평균/최대 대기 시간, 실패/버린 질의 수 ...)
+	public void saveQueryEngine(String queryEngine) {
+		try {
+			String outDir = basePath + "pyweb/src/webtest/gui/";
+			String outFileName = "queryEngine.json";
+
+			File outputFile = new File(outDir, outFileName);
+			FileWriter output = new FileWriter(outputFile);
+			BufferedWriter bw = new BufferedWriter(output);
+
+			bw.write(queryEngine);
+			bw.flush();
+			bw.close();
+			output.close();
+
+		} catch (Exception e) {
+
+			e.printStackTrace();
+		}
+	}
+
 	public void saveGraph() {
 		String getGraphData = null;
 		String S = null;
@@ -109,15 +119,9 @@ public class GUIAction implements ActionBody {
 
 		// This is for Object
 		for (int i = 0; i < Obj.length; i++) {
-			S = Obj[i].get("S").toString().replace("#", ":");
-			P = Obj[i].get("P").toString().replace("#", ":");
-			O = Obj[i].get("O").toString().replace("#", ":");
-
-			for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
-				S = S.replace(prefix.getKey(), prefix.getValue());
-				P = P.replace(prefix.getKey(), prefix.getValue());
-				O = O.replace(prefix.getKey(), prefix.getValue());
-			}
+			S = NamespaceCodec.getInstance().compact(Obj[i].get("S").toString()).replace("#", ":");
+			P = NamespaceCodec.getInstance().compact(Obj[i].get("P").toString()).replace("#", ":");
+			O = NamespaceCodec.getInstance().compact(Obj[i].get("O").toString()).replace("#", ":");
 
 			if (tmpNodes.get(S) == null) {
 
@@ -157,15 +161,9 @@ public class GUIAction implements ActionBody {
 
 		// This is for Grasp
 		for (int i = 0; i < Grs.length; i++) {
-			S = Grs[i].get("S").toString().replace("#", ":");
-			P = Grs[i].get("P").toString().replace("#", ":");
-			O = Grs[i].get("O").toString().replace("#", ":");
-
-			for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
-				S = S.replace(prefix.getKey(), prefix.getValue());
-				P = P.replace(prefix.getKey(), prefix.getValue());
-				O = O.replace(prefix.getKey(), prefix.getValue());
-			}
+			S = NamespaceCodec.getInstance().compact(Grs[i].get("S").toString()).replace("#", ":");
+			P = NamespaceCodec.getInstance().compact(Grs[i].get("P").toString()).replace("#", ":");
+			O = NamespaceCodec.getInstance().compact(Grs[i].get("O").toString()).replace("#", ":");
 
 			if (tmpNodes.get(S) == null) {
 				nodeElement.put("id", "g" + S);
@@ -203,15 +201,9 @@ public class GUIAction implements ActionBody {
 
 		// This is for Robot
 		for (int i = 0; i < Rbs.length; i++) {
-			S = Rbs[i].get("S").toString().replace("#", ":");
-			P = Rbs[i].get("P").toString().replace("#", ":");
-			O = Rbs[i].get("O").toString().replace("#", ":");
-
-			for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
-				S = S.replace(prefix.getKey(), prefix.getValue());
-				P = P.replace(prefix.getKey(), prefix.getValue());
-				O = O.replace(prefix.getKey(), prefix.getValue());
-			}
+			S = NamespaceCodec.getInstance().compact(Rbs[i].get("S").toString()).replace("#", ":");
+			P = NamespaceCodec.getInstance().compact(Rbs[i].get("P").toString()).replace("#", ":");
+			O = NamespaceCodec.getInstance().compact(Rbs[i].get("O").toString()).replace("#", ":");
 
 			if (tmpNodes.get(S) == null) {
 				nodeElement.put("id", "r" + S);
@@ -299,15 +291,9 @@ public class GUIAction implements ActionBody {
 
 		// This is for Object
 		for (int i = 0; i < query.length; i++) {
-			S = query[i].get("S").toString().replace("#", ":");
-			P = query[i].get("P").toString().replace("#", ":");
-			O = query[i].get("O").toString().replace("#", ":");
-
-			for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
-				S = S.replace(prefix.getKey(), prefix.getValue());
-				P = P.replace(prefix.getKey(), prefix.getValue());
-				O = O.replace(prefix.getKey(), prefix.getValue());
-			}
+			S = NamespaceCodec.getInstance().compact(query[i].get("S").toString()).replace("#", ":");
+			P = NamespaceCodec.getInstance().compact(query[i].get("P").toString()).replace("#", ":");
+			O = NamespaceCodec.getInstance().compact(query[i].get("O").toString()).replace("#", ":");
 
 			if (tmpNodes.get(S) == null) {
 				nodeElement.put("id", "h" + S);
@@ -559,26 +545,4 @@ public class GUIAction implements ActionBody {
 		return s;
 	}
 
-	public static String prefixToURI(String s) {
-
-		s = s.replaceAll("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-		s = s.replaceAll("knowrob:", "http://knowrob.org/kb/knowrob.owl#");
-		s = s.replaceAll("arbi:", "http://www.arbi.com/ontologies/arbi.owl#");
-		s = s.replaceAll("robot:", "http://knowrob.org/kb/jaco.owl#");
-
-		s = "" + s + "";
-
-		return s;
-	}
-
-	public static String URIToPrefix(String s) {
-
-		s = s.replaceAll("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "rdf:");
-		s = s.replaceAll("http://knowrob.org/kb/knowrob.owl#", "knowrob:");
-		s = s.replaceAll("http://www.arbi.com/ontologies/arbi.owl#", "arbi:");
-		s = s.replaceAll("http://knowrob.org/kb/jaco.owl#", "robot:");
-
-		return s;
-	}
-
 }
\ No newline at end of file
@@ -11,6 +11,8 @@ import java.util.List;
 import org.jpl7.Query;
 
 import kgu.agent.demo.actionArgument.LatestPerceptionArgument;
+import kgu.agent.demo.prolog.MaterializedViews;
+import kgu.agent.demo.prolog.SpatialIndex;
 import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
 import kr.ac.uos.ai.arbi.model.GeneralizedList;
 import kr.ac.uos.ai.arbi.model.parser.GLParser;
@@ -183,6 +185,16 @@ public class LatestPerceptionAction implements ActionBody {
                   + y + "'))" + " robotPerception";
 
             assertTriple(assertString);
+            MaterializedViews.update(ID);
+            // AMR_LIFT1/2 가 아닌 이름은 ID가 없다 (namespace IRI만으로 색인하지 않는다)
+            if (!ID.isEmpty()) {
+               try {
+                  SpatialIndex.getInstance().update("http://www.arbi.com/ontologies/arbi.owl#" + ID,
+                        Double.parseDouble(x), Double.parseDouble(y));
+               } catch (NumberFormatException e) {
+                  e.printStackTrace();
+               }
+            }
 
             assertString = "'http://www.arbi.com/ontologies/arbi.owl#rotationMatrix3D_" + ID
                   + subVisualRobotBodyPerceptionCount
@@ -274,6 +286,7 @@ public class LatestPerceptionAction implements ActionBody {
                 + direction + "'))" + " robotPerception";
 
           assertTriple(assertString);
+          MaterializedViews.update(ID);
 
   
 
@@ -0,0 +1,237 @@
+package kgu.agent.demo.action;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jpl7.JPL;
+import org.jpl7.Query;
+import org.jpl7.Term;
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.actionArgument.NotifyArgument;
+import kgu.agent.demo.prolog.DeliveryPolicy;
+import kgu.agent.demo.prolog.SubscriptionRegistry;
+
+// 구독 규칙이 맞았을 때 Prolog(arbi_subscription:subscription_notify)가 부르는 객체
+// 규칙마다 jpl_new 하던 것을 없애고, 미리 등록한 이 객체 하나가 받는다
+// fire()는 lock 없는 queue에 넣고 바로 돌아가므로 RDF를 쓰는 thread는 NotifyAction이나 broker I/O를 기다리지 않는다
+// notify GL 생성과 전송은 NotificationDispatcher thread가 한다
+// edge-triggered 구독은 결과가 바뀐 것만 보낸다 : 새 결과는 (P "S" "O"),
+//   retract/update로 더 이상 맞지 않는 결과는 (removed (P "S" "O")) (arbi_subscription이 withdraw로 알려 준다)
+// 그 전에 구독의 DeliveryPolicy(debounce, maxRate, latestOnly, minChange)가 넘치는 결과를 접는다
+//   미룬 결과는 때가 되면 scheduler가 release 항목을 queue에 넣어 이 thread가 보낸다
+public class NotificationDispatcher implements Runnable {
+
+	private static final NotificationDispatcher instance = new NotificationDispatcher();
+
+	public static NotificationDispatcher getInstance() {
+		return instance;
+	}
+
+	private final ConcurrentLinkedQueue<Fired> queue = new ConcurrentLinkedQueue<Fired>();
+	private final NotifyAction notifyAction = new NotifyAction();
+	private volatile NotificationSink sink;
+	private volatile Thread thread;
+
+	private final AtomicLong fired = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	// 전달 전에 구독이 해제된 것
+	private final AtomicLong dropped = new AtomicLong();
+	// edge-triggered 구독에서 이미 보낸 결과라 보내지 않은 것
+	private final AtomicLong unchanged = new AtomicLong();
+	private final AtomicLong removed = new AtomicLong();
+	// DeliveryPolicy가 미루거나 접은 것
+	private final AtomicLong held = new AtomicLong();
+	private final AtomicLong lagNanos = new AtomicLong();
+
+	// release가 예약된 구독 key
+	private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "NotificationDispatcher-delivery");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	// 전달 thread를 띄우고 Prolog에 이 객체를 등록한다
+	public synchronized void start(NotificationSink sink) {
+		this.sink = sink;
+		if (thread != null)
+			return;
+		thread = new Thread(this, "NotificationDispatcher");
+		thread.setDaemon(true);
+		thread.start();
+
+		boolean registered = false;
+		try {
+			registered = new Query("arbi_subscription:subscription_set_dispatcher",
+					new Term[] { JPL.newJRef(this) }).hasSolution();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.out.println("NotificationDispatcher " + (registered ? "registered" : "failed"));
+	}
+
+	// key : SubscriptionRegistry의 (subscriber, id) 키, S P O : term_to_atom 한 값
+	public void fire(String key, String S, String P, String O) {
+		fired.incrementAndGet();
+		enqueue(new Fired(key, S, P, O, false));
+	}
+
+	// edge-triggered 구독의 결과 (S P O)가 retract/update로 철회되었다
+	public void withdraw(String key, String S, String P, String O) {
+		enqueue(new Fired(key, S, P, O, true));
+	}
+
+	private void enqueue(Fired f) {
+		queue.offer(f);
+		Thread t = thread;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Fired f = queue.poll();
+			if (f == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			deliver(f);
+		}
+	}
+
+	private void deliver(Fired f) {
+		SubscriptionRegistry.Subscription subscription = SubscriptionRegistry.getInstance().lookup(f.key);
+		if (subscription == null) {
+			if (!f.isRelease())
+				dropped.incrementAndGet();
+			return;
+		}
+
+		DeliveryPolicy policy = subscription.getPolicy();
+		if (f.removal) {
+			// 아직 보내지 않고 모아 둔 결과면 보내지 않으면 그만이다
+			if (policy == null || !policy.withdraw(f.S, f.P, f.O))
+				withdraw(subscription, f.S, f.P, f.O);
+			return;
+		}
+		if (!f.isRelease() && (policy == null || policy.isPassThrough())) {
+			deliver(subscription, f.S, f.P, f.O, f.firedAt);
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		List<String[]> ready = f.isRelease() ? policy.release(now) : policy.offer(f.S, f.P, f.O, now);
+		if (!f.isRelease() && ready.isEmpty())
+			held.incrementAndGet();
+		for (String[] t : ready)
+			deliver(subscription, t[0], t[1], t[2], f.firedAt);
+		if (policy.hasPending())
+			schedule(f.key, policy.getDueAt() - now);
+	}
+
+	// 미룬 결과를 delay ms 뒤에 release 항목으로 다시 queue에 넣는다
+	private void schedule(final String key, long delay) {
+		if (!scheduled.add(key))
+			return;
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				scheduled.remove(key);
+				enqueue(new Fired(key, null, null, null, false));
+			}
+		}, Math.max(delay, 1), TimeUnit.MILLISECONDS);
+	}
+
+	private void deliver(SubscriptionRegistry.Subscription subscription, String S, String P, String O, long firedAt) {
+		if (subscription.isEdgeTriggered() && !subscription.add(S, P, O)) {
+			unchanged.incrementAndGet();
+			return;
+		}
+
+		try {
+			send(subscription, format(subscription, S, P, O));
+			delivered.incrementAndGet();
+			lagNanos.addAndGet(System.nanoTime() - firedAt);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void withdraw(SubscriptionRegistry.Subscription subscription, String S, String P, String O) {
+		if (!subscription.isEdgeTriggered() || !subscription.remove(S, P, O))
+			return;
+		try {
+			send(subscription, "(removed " + format(subscription, S, P, O) + ")");
+			removed.incrementAndGet();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private String format(SubscriptionRegistry.Subscription subscription, String S, String P, String O) {
+		return (String) notifyAction.execute(new NotifyArgument(subscription.getSubscriber(), S, P, O));
+	}
+
+	private void send(SubscriptionRegistry.Subscription subscription, String notification) {
+		NotificationSink s = sink;
+		if (s != null)
+			s.onNotification(subscription.getSubscriber(), notification);
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		long n = delivered.get();
+		obj.put("fired", fired.get());
+		obj.put("delivered", n);
+		obj.put("dropped", dropped.get());
+		obj.put("unchanged", unchanged.get());
+		obj.put("removed", removed.get());
+		obj.put("held", held.get());
+		obj.put("queued", queue.size());
+		obj.put("avgLagMillis", n == 0 ? 0 : lagNanos.get() / 1e6 / n);
+		return obj.toJSONString();
+	}
+
+	private static class Fired {
+		final String key;
+		final String S;
+		final String P;
+		final String O;
+		// withdraw : 철회된 결과
+		final boolean removal;
+		final long firedAt = System.nanoTime();
+
+		Fired(String key, String S, String P, String O, boolean removal) {
+			this.key = key;
+			this.S = S;
+			this.P = P;
+			this.O = O;
+			this.removal = removal;
+		}
+
+		// DeliveryPolicy에 미뤄 둔 결과를 꺼내라는 항목
+		boolean isRelease() {
+			return S == null;
+		}
+	}
+
+}
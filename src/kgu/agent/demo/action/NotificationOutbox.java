@@ -0,0 +1,218 @@
+package kgu.agent.demo.action;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+
+// 구독자별 notify 송신 queue
+// 첫 notify가 들어오고 NOTIFY_BATCH_WINDOW 동안 모인 것을 메시지 하나로 보낸다
+//   하나면 그대로 (P "S" "O"), 여럿이면 (notifyBatch (P "S" "O") (P "S" "O") ...)
+// NOTIFY_BATCH_MAX 개가 차면 창을 기다리지 않고 보낸다
+// 구독자 queue가 NOTIFY_QUEUE_CAPACITY를 넘으면 오래된 것부터 버리고 dropped로 센다
+// 보내는 것은 모두 flusher thread가 한다 (dispatcher thread는 broker I/O를 기다리지 않는다)
+public class NotificationOutbox implements NotificationSink {
+
+	public static final String BATCH = "notifyBatch";
+
+	private final NotificationSink sink;
+	private final long window;
+	private final int batchMax;
+	private final int capacity;
+
+	private final Map<String, Outlet> outlets = new ConcurrentHashMap<String, Outlet>();
+	private final ScheduledExecutorService flusher;
+
+	public NotificationOutbox(NotificationSink sink) {
+		this(sink, Configuration.NOTIFY_BATCH_WINDOW, Configuration.NOTIFY_BATCH_MAX,
+				Configuration.NOTIFY_QUEUE_CAPACITY);
+	}
+
+	// sink : 실제로 보내는 쪽 (Robot_CM의 notify)
+	public NotificationOutbox(NotificationSink sink, long window, int batchMax, int capacity) {
+		this.sink = sink;
+		this.window = window;
+		this.batchMax = Math.max(1, batchMax);
+		this.capacity = Math.max(this.batchMax, capacity);
+
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "NotificationOutbox");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void onNotification(String subscriber, String notification) {
+		Outlet outlet = outlets.get(subscriber);
+		if (outlet == null) {
+			outlets.putIfAbsent(subscriber, new Outlet(subscriber));
+			outlet = outlets.get(subscriber);
+		}
+
+		synchronized (outlet) {
+			if (outlet.queue.size() >= capacity) {
+				outlet.queue.poll();
+				outlet.dropped.incrementAndGet();
+			}
+			outlet.queue.add(notification);
+			outlet.queued.incrementAndGet();
+
+			if (window <= 0 || outlet.queue.size() >= batchMax) {
+				if (!outlet.submitted) {
+					outlet.submitted = true;
+					flusher.execute(outlet.flushNow);
+				}
+			}
+			if (window > 0 && !outlet.scheduled) {
+				outlet.scheduled = true;
+				flusher.schedule(outlet, window, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	// subscriber의 마지막 구독이 해제되었을 때 : 남은 것을 보내고 outlet을 지운다
+	public void remove(final String subscriber) {
+		flusher.execute(new Runnable() {
+			@Override
+			public void run() {
+				Outlet outlet = outlets.get(subscriber);
+				if (outlet == null)
+					return;
+				outlet.flush();
+				synchronized (outlet) {
+					if (outlet.queue.isEmpty())
+						outlets.remove(subscriber);
+				}
+			}
+		});
+	}
+
+	public void flush() {
+		for (Outlet outlet : outlets.values())
+			outlet.flush();
+	}
+
+	public int getPendingCount() {
+		int n = 0;
+		for (Outlet outlet : outlets.values()) {
+			synchronized (outlet) {
+				n += outlet.queue.size();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		obj.put("window", window);
+		obj.put("batchMax", batchMax);
+		obj.put("subscribers", outlets.size());
+		for (Outlet outlet : outlets.values())
+			obj.put(outlet.subscriber, outlet.toJSON());
+		return obj.toJSONString();
+	}
+
+	private class Outlet implements Runnable {
+		final String subscriber;
+		final ArrayDeque<String> queue = new ArrayDeque<String>();
+		boolean scheduled = false;
+		// 창을 기다리지 않고 batchMax 씩 꽉 찬 것만 보내는 flushNow가 flusher에 올라가 있는지 (나머지는 창이 닫힐 때)
+		boolean submitted = false;
+		final Runnable flushNow = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (Outlet.this) {
+					submitted = false;
+				}
+				synchronized (sending) {
+					drain(window > 0);
+				}
+			}
+		};
+		// flusher thread와 flush()를 부른 thread가 동시에 보내도 순서가 바뀌지 않게
+		final Object sending = new Object();
+
+		final AtomicLong queued = new AtomicLong();
+		final AtomicLong sent = new AtomicLong();
+		final AtomicLong messages = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+
+		Outlet(String subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		// 창이 닫힐 때 (flusher thread)
+		@Override
+		public void run() {
+			synchronized (this) {
+				scheduled = false;
+			}
+			flush();
+		}
+
+		// 보내는 동안에는 queue lock을 잡지 않는다 (broker I/O 중에도 onNotification은 queue에 넣을 수 있다)
+		void flush() {
+			synchronized (sending) {
+				drain(false);
+			}
+		}
+
+		// fullOnly : batchMax 보다 적게 남으면 멈춘다
+		private void drain(boolean fullOnly) {
+			while (true) {
+				String message;
+				int n;
+				synchronized (this) {
+					n = Math.min(queue.size(), batchMax);
+					if (n == 0 || fullOnly && n < batchMax)
+						return;
+					if (n == 1) {
+						message = queue.poll();
+					} else {
+						StringBuilder sb = new StringBuilder("(" + BATCH);
+						for (int i = 0; i < n; i++)
+							sb.append(" ").append(queue.poll());
+						message = sb.append(")").toString();
+					}
+				}
+
+				try {
+					sink.onNotification(subscriber, message);
+					sent.addAndGet(n);
+					messages.incrementAndGet();
+				} catch (Exception e) {
+					e.printStackTrace();
+					failed.addAndGet(n);
+				}
+			}
+		}
+
+		JSONObject toJSON() {
+			JSONObject obj = new JSONObject();
+			synchronized (this) {
+				obj.put("pending", queue.size());
+			}
+			obj.put("queued", queued.get());
+			obj.put("sent", sent.get());
+			obj.put("messages", messages.get());
+			obj.put("dropped", dropped.get());
+			obj.put("failed", failed.get());
+			return obj;
+		}
+	}
+
+}
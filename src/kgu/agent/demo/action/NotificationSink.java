@@ -0,0 +1,8 @@
+package kgu.agent.demo.action;
+
+// 구독 규칙이 만든 notify GL을 구독자에게 보낸다
+public interface NotificationSink {
+
+	public void onNotification(String subscriber, String notification);
+
+}
@@ -0,0 +1,8 @@
+package kgu.agent.demo.action;
+
+// (stream N) 질의의 결과 청크를 요청자에게 전달한다
+public interface QueryResultStream {
+
+	public void onResult(String receiver, String result);
+
+}
@@ -1,14 +1,25 @@
 package kgu.agent.demo.action;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.jpl7.PrologException;
 import org.jpl7.Query;
 import org.jpl7.Term;
 
+import kgu.agent.demo.Configuration;
 import kgu.agent.demo.actionArgument.ReasoningQueryArgument;
 import kgu.agent.demo.paser.ContextQueryPaser;
+import kgu.agent.demo.prolog.MaterializedViews;
+import kgu.agent.demo.prolog.NamespaceCodec;
+import kgu.agent.demo.prolog.QueryPlanner;
 import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
 import kr.ac.uos.ai.arbi.ltm.DataSource;
 import kr.ac.uos.ai.arbi.model.Binding;
@@ -19,24 +30,59 @@ import kr.ac.uos.ai.arbi.model.GeneralizedList;
 import kr.ac.uos.ai.arbi.model.parser.ParseException;
 
 public class ReasoningQueryAction implements ActionBody {
-	private DataSource ds;
+	// (context ...) 안의 결과 제어 옵션: (limit N) (offset N) (stream N)
+	private static final Pattern QUERY_OPTION = Pattern.compile("\\(\\s*(limit|offset|stream)\\s+(\\d+)\\s*\\)");
+	// (aggregate count) (aggregate exists) (aggregate min|max|avg|distinct $X) : 집계는 Prolog 안에서 하고 값 하나만 돌려준다
+	private static final Pattern AGGREGATE_OPTION = Pattern
+			.compile("\\(\\s*aggregate\\s+(count|exists|min|max|avg|distinct)(?:\\s+\\$([\\w-]+))?\\s*\\)");
+	private static final AtomicLong streamCount = new AtomicLong();
+
+	// 하나의 인스턴스를 모든 엔진 스레드가 같이 쓰므로 질의마다 필요한 작업 버퍼는 스레드별로 둔다
+	private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		}
+	};
+	private static final ThreadLocal<StringBuilder> translationBuilder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+	private static final ThreadLocal<StringBuilder> resultBuilder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(1024);
+		}
+	};
+
+	private final FactWriteBack writeBack;
+	private volatile QueryResultStream resultStream;
 	
 	public ReasoningQueryAction(DataSource ds) {
-		this.ds = ds;
+		this.writeBack = new FactWriteBack(ds);
+	}
+
+	public void setResultStream(QueryResultStream resultStream) {
+		this.resultStream = resultStream;
 	}
 	
 	@Override
 	public Object execute(Object o) {
 		ReasoningQueryArgument Log = (ReasoningQueryArgument) o;
 		String queryToProlog;
-		String queryResult = "";
+		StringBuilder queryResult = resultBuilder.get();
+		queryResult.setLength(0);
 		double time2;
 		double time;
 
+		String queryGL = parseOptions(Log);
+
 		//System.out.println("what i got is  :" +  o);
 		GeneralizedList gl = null;
 		try {
-			gl = GLFactory.newGLFromGLString(Log.getQueryGL());
+			gl = GLFactory.newGLFromGLString(queryGL);
 
 		} catch (ParseException e) {
 			// TODO Auto-generated catch block
@@ -46,10 +92,12 @@ public class ReasoningQueryAction implements ActionBody {
 		// String query = "(context (on_Physical $Top
 		// \"http://www.arbi.com/ontologies/arbi.owl#table1\") (on_Physical
 		// $Top2 \"http://www.arbi.com/ontologies/arbi.owl#table2\") )";
-		String sumOfPrologQuery = "";
-		String temp = prefixToURI(Log.getQueryGL()).replaceAll("-", "_");
+		StringBuilder sumOfPrologQuery = translationBuilder.get();
+		sumOfPrologQuery.setLength(0);
+		String temp = NamespaceCodec.getInstance().expand(queryGL).replace('-', '_');
 		String[] forVariable = temp.split("\\)|\\(| |\n|\t");
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		SimpleDateFormat sdf = dateFormat.get();
+		ArrayList<QueryPlanner.Goal> goals = new ArrayList<QueryPlanner.Goal>();
 
 		
 		//System.out.println("gl: "+gl); //test
@@ -66,6 +114,7 @@ public class ReasoningQueryAction implements ActionBody {
 			String predicate = temp2.getName();
 			String prologQuery = predicate + "(";
 			String[] arg = new String[tempSize];
+			boolean[] isVariable = new boolean[tempSize];
 
 			for (int j = 0; j < tempSize; j++) {
 
@@ -77,6 +126,7 @@ public class ReasoningQueryAction implements ActionBody {
 
 				if (arg[j].contains("$")) {
 					arg[j] = arg[j].substring(1, arg[j].length());
+					isVariable[j] = true;
 					prologQuery += "" + arg[j] + ", ";
 
 				} else {
@@ -91,9 +141,8 @@ public class ReasoningQueryAction implements ActionBody {
 					} catch (java.text.ParseException e2) {}
 		
 					if(arg[j].contains("#"))
-						prologQuery += "'" + arg[j] + "', ";
-					else
-						prologQuery += "" + arg[j] + ", ";
+						arg[j] = "'" + arg[j] + "'";
+					prologQuery += "" + arg[j] + ", ";
 
 				} if (j + 1 == temp2.getExpressionsSize()) {
 					prologQuery = prologQuery.substring(0, prologQuery.length() - 2);
@@ -105,98 +154,307 @@ public class ReasoningQueryAction implements ActionBody {
 			
 		//	System.out.println("prolog Query: "+prologQuery);
 
-			if (i + 1 == gl.getExpressionsSize()) {
-				sumOfPrologQuery += prologQuery + ".";
+			// view로 선언된 predicate는 재계산하지 않고 테이블에서 찾는다
+			if (MaterializedViews.isView(predicate))
+				prologQuery = MaterializedViews.lookup(prologQuery);
+
+			goals.add(new QueryPlanner.Goal(predicate, prologQuery, arg, isVariable));
+
+		}
+
+		// 여러 goal로 된 질의는 추정 비용 순으로 다시 배치한다
+		// (offset/limit 페이징 중에는 페이지 사이의 결과 순서가 바뀌지 않도록 쓰여진 순서를 그대로 쓴다)
+		List<QueryPlanner.Goal> plan = goals;
+		if (Configuration.QUERY_REORDER && Log.getOffset() == 0 && Log.getLimit() == 0)
+			plan = QueryPlanner.getInstance().order(goals);
+
+		for (int i = 0; i < plan.size(); i++) {
+			if (i + 1 == plan.size()) {
+				sumOfPrologQuery.append(plan.get(i).getText()).append(".");
 			}else {
-				sumOfPrologQuery += prologQuery + ", ";
+				sumOfPrologQuery.append(plan.get(i).getText()).append(", ");
 			}
-			
-
 		}
 		//System.out.println("Trans to Prolog Query : \n"+sumOfPrologQuery);
 
-		Log.setQueryToProlog(sumOfPrologQuery);
+		Log.setQueryToProlog(sumOfPrologQuery.toString());
 
 		time = System.currentTimeMillis();
 		
 		
 		
 		////////////////////////////////////////////////////// 추론 시작
-		Query q = new Query(sumOfPrologQuery);
-		//System.out.println("q in ReasoningQueryAction.java" + q);
-		while (q.hasMoreSolutions()) {
-			//System.out.println("hasSolution q name: " + q);
-			// 질의에 대한 결과가 있는 경우
-			String temp2 = temp;
-			Map<String, Term> s3 = q.nextSolution();
-			
-			//System.out.println("Map length :"+forVariable.length);
+		// 변수 목록 (findall 템플릿 v(A, B, ...)의 인자 순서)
+		ArrayList<String> variables = new ArrayList<String>();
+		for (int l = 0; l < forVariable.length; l++) {
+			if (forVariable[l].startsWith("$") && !variables.contains(forVariable[l].substring(1)))
+				variables.add(forVariable[l].substring(1));
+		}
 
-			for (int l = 0; l < forVariable.length; l++) {
-				
-				//System.out.println("forVariable[l] :" + forVariable[l]);
-				
-				if (forVariable[l].contains("$")) {
-					String variable = forVariable[l].substring(1);
-					
-					//System.out.println("hihi"+ s3.get(variable));		
-					if(s3.get(variable).getClass().getName()=="org.jpl7.Integer") {
-						String answer1 = s3.get(variable).toString();
-					
-						temp2 = temp2.replace("$" + variable, answer1);
-						Integer answer = Integer.parseInt(answer1);
-								
-					}
-									
-					else {
-						//System.out.println(s3.get(variable));
-						String answer = s3.get(variable).toString();
-					 
-					 answer = answer.replace("'", "");
-					//쌍따옴표 붙여서 출력하는 부분
-					if (!answer.contains("\""))
-						answer = "\"" + answer + "\"";
-
-					//
-					temp2 = temp2.replace("$" + variable, answer);
-					}
-					
-				}
+		String goal = sumOfPrologQuery.substring(0, sumOfPrologQuery.length() - 1);
+		String template = variables.isEmpty() ? "v" : "v(" + String.join(", ", variables) + ")";
+		// write-back 정책은 첫 번째 goal의 predicate로 정한다
+		String predicate = gl.getExpression(0).asGeneralizedList().getName();
 
-				// System.out.println(s3.toString());
+		if (Log.getAggregate() != null)
+			return aggregateSolutions(Log, goal, time);
 
-			}
-			
-			/*if(temp2.split("")) {
-				
-			}*/
+		// 스트리밍: findnsols로 N개씩 끊어서 요청자에게 바로 보낸다
+		if (Log.getStream() > 0) {
+			if (resultStream == null)
+				return queryError(Log, "unsupported", "(stream " + Log.getStream() + ") needs a result stream", time);
+			return streamSolutions(Log, predicate, goal, template, variables, temp, forVariable, time);
+		}
 
-			// System.out.println(s3.toString());
-			/*if(temp2.split(" ").length==4) {
-				String exps[] = temp2.split(" ");
-				String predicate = exps[1].replace("(", "");
-				String param1 = exps[2].replace("\"", "'");
-				String param2 = exps[3].replace(")", "");
-				
-				String result=param1+","+predicate+","+param2+",highLevel";
-				System.out.println(result);
-				
-				assertTriple(param1+","+predicate+","+param2+",highLevel");
-			}*/
-			
-			queryResult += temp2 + "\n";
+		// 페이징: offset만큼 건너뛰고 limit + 1개를 구해서 다음 페이지가 있는지 확인한다
+		String solutionGoal = goal;
+		if (Log.getOffset() > 0)
+			solutionGoal = "offset(" + Log.getOffset() + ", (" + solutionGoal + "))";
+		if (Log.getLimit() > 0)
+			solutionGoal = "limit(" + (Log.getLimit() + 1) + ", (" + solutionGoal + "))";
 
+		// wall-clock deadline and inference budget so one pathological query can't hold the engine
+		String limitedQuery = "call_with_time_limit(" + (Log.getTimeLimit() / 1000.0) + ", "
+				+ "call_with_inference_limit(findall(" + template + ", (" + solutionGoal + "), Solutions), "
+				+ Log.getInferenceLimit() + ", LimitResult))";
+
+		Map<String, Term> limited = null;
+		try {
+			limited = new Query(limitedQuery).oneSolution();
+		} catch (PrologException e) {
+			if (e.term().hasFunctor("time_limit_exceeded", 0))
+				return queryError(Log, "timeout", "time limit of " + Log.getTimeLimit() + "ms exceeded", time);
+			e.printStackTrace();
+			return queryError(Log, "exception", e.term().toString(), time);
 		}
 
+		if (limited != null && limited.get("LimitResult").hasFunctor("inference_limit_exceeded", 0))
+			return queryError(Log, "inferenceLimit", "inference limit of " + Log.getInferenceLimit() + " exceeded", time);
+
+		Term[] solutions = limited == null ? new Term[0] : limited.get("Solutions").listToTermArray();
+		int count = solutions.length;
+		if (Log.getLimit() > 0 && count > Log.getLimit())
+			count = Log.getLimit();
+
+		for (int i = 0; i < count; i++)
+			appendSolution(queryResult, solutions[i], variables, temp, forVariable);
+
+		if(count > 0)
+			writeBack.publish(predicate, queryResult.toString());
+		if (Log.getOffset() == 0 && Log.getLimit() == 0)
+			writeBack.retain(goal, queryResult.toString());
+
+		// 남은 결과가 있으면 다음 페이지의 offset을 cursor로 알려준다
+		if (count < solutions.length)
+			queryResult.append("(cursor " + (Log.getOffset() + count) + ")\n");
+
 		time2 = System.currentTimeMillis();
 		Log.setReasoningTime(time2 - time);
-		Log.setQueryResult(queryResult);
+		Log.setQueryResult(queryResult.toString());
 		//System.out.println("query result : " + queryResult);
 
-		if(!queryResult.equals(""))
-			ds.assertFact(queryResult);
+		return queryResult.toString();
+	}
+
+	// 결과 제어 옵션을 Log에 옮기고 옵션이 빠진 질의 GL을 돌려준다
+	private String parseOptions(ReasoningQueryArgument Log) {
+		Matcher m = QUERY_OPTION.matcher(Log.getQueryGL());
+		while (m.find()) {
+			int value = Integer.parseInt(m.group(2));
+			if (m.group(1).equals("limit"))
+				Log.setLimit(value);
+			else if (m.group(1).equals("offset"))
+				Log.setOffset(value);
+			else
+				Log.setStream(value);
+		}
+		String queryGL = m.replaceAll("");
+
+		m = AGGREGATE_OPTION.matcher(queryGL);
+		if (m.find()) {
+			Log.setAggregate(m.group(1));
+			Log.setAggregateVariable(m.group(2));
+		}
+		return m.replaceAll("");
+	}
+
+	// 집계 질의: 해를 Java로 가져오지 않고 aggregate_all/once로 Prolog 안에서 값 하나로 줄인다
+	//   (aggregate "count" 12)  (aggregate "max" "D" 3.5)  (aggregate "exists" "true")
+	private String aggregateSolutions(ReasoningQueryArgument Log, String goal, double time) {
+		String op = Log.getAggregate();
+		String v = Log.getAggregateVariable();
+		// 집계 결과는 값 하나라서 페이지나 스트림으로 나눌 수 없다
+		if (Log.getLimit() > 0 || Log.getOffset() > 0 || Log.getStream() > 0)
+			return queryError(Log, "parse", "(aggregate " + op + ") cannot be combined with limit, offset or stream", time);
+		if (v == null && !op.equals("count") && !op.equals("exists"))
+			return queryError(Log, "parse", "(aggregate " + op + ") needs a variable", time);
+
+		String aggregateGoal;
+		if (op.equals("count"))
+			aggregateGoal = "aggregate_all(count, (" + goal + "), Result)";
+		else if (op.equals("exists"))
+			aggregateGoal = "(once((" + goal + ")) -> Result = true ; Result = false)";
+		else if (op.equals("distinct"))
+			aggregateGoal = "aggregate_all(count, distinct(" + v + ", (" + goal + ")), Result)";
+		else if (op.equals("avg"))
+			aggregateGoal = "aggregate_all(r(count, sum(" + v + ")), (" + goal + "), r(N, S)), "
+					+ "(N > 0 -> Result is S / N ; Result = none)";
+		else
+			aggregateGoal = "(aggregate_all(" + op + "(" + v + "), (" + goal + "), R0) -> Result = R0 ; Result = none)";
+
+		String limitedQuery = "call_with_time_limit(" + (Log.getTimeLimit() / 1000.0) + ", "
+				+ "call_with_inference_limit((" + aggregateGoal + "), " + Log.getInferenceLimit() + ", LimitResult))";
+
+		Map<String, Term> s3;
+		try {
+			s3 = new Query(limitedQuery).oneSolution();
+		} catch (PrologException e) {
+			if (e.term().hasFunctor("time_limit_exceeded", 0))
+				return queryError(Log, "timeout", "time limit of " + Log.getTimeLimit() + "ms exceeded", time);
+			e.printStackTrace();
+			return queryError(Log, "exception", e.term().toString(), time);
+		}
+		if (s3 == null)
+			return queryError(Log, "exception", "aggregate " + op + " failed", time);
+		if (s3.get("LimitResult").hasFunctor("inference_limit_exceeded", 0))
+			return queryError(Log, "inferenceLimit", "inference limit of " + Log.getInferenceLimit() + " exceeded", time);
+
+		Term value = s3.get("Result");
+		String result = "(aggregate \"" + op + "\"" + (v == null ? "" : " \"" + v + "\"") + " "
+				+ (value.isInteger() || value.isFloat() ? value.toString() : "\"" + value.toString().replace("'", "") + "\"")
+				+ ")";
+
+		Log.setReasoningTime(System.currentTimeMillis() - time);
+		Log.setQueryResult(result);
+		return result;
+	}
+
+	private String streamSolutions(ReasoningQueryArgument Log, String predicate, String goal, String template,
+			ArrayList<String> variables, String temp, String[] forVariable, double time) {
+		String streamID = "stream" + streamCount.incrementAndGet();
+		double deadline = time + Log.getTimeLimit();
+		// call_with_time_limit는 goal을 한 번만 풀어서 청크마다 되돌아오는 findnsols를 감쌀 수 없다.
+		// 같은 방식(alarm)으로 남은 시간 뒤에 time_limit_exceeded를 던져서 청크 하나가 마감을 넘기지 못하게 한다
+		double remaining = Math.max(deadline - System.currentTimeMillis(), 1) / 1000.0;
+		String chunkQuery = "setup_call_cleanup(alarm(" + remaining + ", throw(time_limit_exceeded), Alarm, [remove(false)]), "
+				+ "call_with_inference_limit(findnsols(" + Log.getStream() + ", " + template + ", (" + goal
+				+ "), Chunk), " + Log.getInferenceLimit() + ", LimitResult), remove_alarm(Alarm))";
+		int total = 0;
+		int index = 0;
+
+		Query q = new Query(chunkQuery);
+		try {
+			while (q.hasMoreSolutions()) {
+				Map<String, Term> s3 = q.nextSolution();
+				if (s3.get("LimitResult").hasFunctor("inference_limit_exceeded", 0))
+					return queryError(Log, "inferenceLimit", "inference limit of " + Log.getInferenceLimit() + " exceeded", time);
+
+				Term[] chunk = s3.get("Chunk").listToTermArray();
+				if (chunk.length == 0)
+					continue;
+
+				StringBuilder lines = new StringBuilder();
+				for (Term solution : chunk)
+					appendSolution(lines, solution, variables, temp, forVariable);
+				total += chunk.length;
+
+				resultStream.onResult(Log.getSender(),
+						"(queryResult \"" + streamID + "\" " + index++ + " " + lines.toString().replace("\n", " ") + ")");
+				writeBack.publish(predicate, lines.toString());
+
+				// 스트리밍은 청크 사이에서 마감 시간을 확인한다
+				if (System.currentTimeMillis() > deadline)
+					return queryError(Log, "timeout", "time limit of " + Log.getTimeLimit() + "ms exceeded", time);
+			}
+		} catch (PrologException e) {
+			if (e.term().hasFunctor("time_limit_exceeded", 0))
+				return queryError(Log, "timeout", "time limit of " + Log.getTimeLimit() + "ms exceeded", time);
+			e.printStackTrace();
+			return queryError(Log, "exception", e.term().toString(), time);
+		} finally {
+			q.close();
+		}
+
+		String streamed = "(streamed \"" + streamID + "\" " + total + ")";
+		Log.setReasoningTime(System.currentTimeMillis() - time);
+		Log.setQueryResult(streamed);
+		return streamed;
+	}
+
+	// 해 하나를 질의 GL의 변수 자리에 채워서 결과 한 줄로 붙인다
+	private void appendSolution(StringBuilder queryResult, Term solution, ArrayList<String> variables, String temp,
+			String[] forVariable) {
+		String temp2 = temp;
+		Map<String, Term> s3 = new HashMap<String, Term>();
+		for (int v = 0; v < variables.size(); v++)
+			s3.put(variables.get(v), solution.arg(v + 1));
+		
+		//System.out.println("Map length :"+forVariable.length);
+
+		for (int l = 0; l < forVariable.length; l++) {
+			
+			//System.out.println("forVariable[l] :" + forVariable[l]);
+			
+			if (forVariable[l].contains("$")) {
+				String variable = forVariable[l].substring(1);
+				
+				//System.out.println("hihi"+ s3.get(variable));		
+				if(s3.get(variable).getClass().getName()=="org.jpl7.Integer") {
+					String answer1 = s3.get(variable).toString();
+				
+					temp2 = temp2.replace("$" + variable, answer1);
+					Integer answer = Integer.parseInt(answer1);
+							
+				}
+								
+				else {
+					//System.out.println(s3.get(variable));
+					String answer = s3.get(variable).toString();
+				 
+				 answer = answer.replace("'", "");
+				//쌍따옴표 붙여서 출력하는 부분
+				if (!answer.contains("\""))
+					answer = "\"" + answer + "\"";
+
+				//
+				temp2 = temp2.replace("$" + variable, answer);
+				}
+				
+			}
+
+			// System.out.println(s3.toString());
+
+		}
+		
+		/*if(temp2.split("")) {
+			
+		}*/
+
+		// System.out.println(s3.toString());
+		/*if(temp2.split(" ").length==4) {
+			String exps[] = temp2.split(" ");
+			String predicate = exps[1].replace("(", "");
+			String param1 = exps[2].replace("\"", "'");
+			String param2 = exps[3].replace(")", "");
+			
+			String result=param1+","+predicate+","+param2+",highLevel";
+			System.out.println(result);
+			
+			assertTriple(param1+","+predicate+","+param2+",highLevel");
+		}*/
 		
-		return queryResult;
+		queryResult.append(temp2 + "\n");
+	}
+
+	// 시간/추론 한도 초과 등으로 실패한 질의는 결과 대신 (error ...) GL을 돌려준다
+	private String queryError(ReasoningQueryArgument Log, String reason, String message, double time) {
+		String error = "(error \"" + reason + "\" \"" + message.replace("\"", "'") + "\")";
+		System.out.println("query failed : " + error);
+
+		Log.setStatus(reason);
+		Log.setReasoningTime(System.currentTimeMillis() - time);
+		Log.setQueryResult(error);
+		return error;
 	}
 
 	public static String literalConversion(String s) {
@@ -215,28 +473,6 @@ public class ReasoningQueryAction implements ActionBody {
 		return s;
 	}
 
-	public static String prefixToURI(String s) {
-
-		s = s.replaceAll("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-		s = s.replaceAll("knowrob:", "http://knowrob.org/kb/knowrob.owl#");
-		s = s.replaceAll("arbi:", "http://www.arbi.com/ontologies/arbi.owl#");
-		s = s.replaceAll("robot:", "http://knowrob.org/kb/jaco.owl#");
-
-		s = "" + s + "";
-
-		return s;
-	}
-
-	public static String URIToPrefix(String s) {
-
-		s = s.replaceAll("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "rdf:");
-		s = s.replaceAll("http://knowrob.org/kb/knowrob.owl#", "knowrob:");
-		s = s.replaceAll("http://www.arbi.com/ontologies/arbi.owl#", "arbi:");
-		s = s.replaceAll("http://knowrob.org/kb/jaco.owl#", "robot:");
-
-		return s;
-	}
-	
 	public void assertTriple(String triple) {
 		triple = triple.replace(" ", ",");
 		Query.hasSolution("rdf_assert("+triple+")");
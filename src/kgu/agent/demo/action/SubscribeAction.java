@@ -2,10 +2,15 @@ package kgu.agent.demo.action;
 
 
 
-import org.jpl7.Query;
-import org.jpl7.Term;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import kgu.agent.demo.Configuration;
 import kgu.agent.demo.actionArgument.SubscribeArgument;
 import kgu.agent.demo.paser.ContextMonitorParser;
+import kgu.agent.demo.paser.MonitorRuleCompiler;
+import kgu.agent.demo.prolog.DeliveryPolicy;
+import kgu.agent.demo.prolog.SubscriptionRegistry;
 import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
 import kr.ac.uos.ai.arbi.ltm.DataSource;
 import kr.ac.uos.ai.arbi.model.Expression;
@@ -14,6 +19,10 @@ import kr.ac.uos.ai.arbi.model.GeneralizedList;
 import kr.ac.uos.ai.arbi.model.parser.ParseException;
 
 public class SubscribeAction implements ActionBody {
+
+	private static final Pattern TRIGGER = Pattern.compile("\\(trigger\\s+\"(edge|level)\"\\s*\\)");
+	private static final Pattern DELIVERY = Pattern.compile("\\(delivery(\\s*\\([^()]*\\))*\\s*\\)");
+	private static final Pattern ID = Pattern.compile("\\(id ([^) ]*)");
 	
 	
 	@Override
@@ -30,14 +39,41 @@ public class SubscribeAction implements ActionBody {
 		System.out.println("message = " + subscribeGL + " from " + sender);
 
 
-		String t = "";
 		String rule = "";
 		String id = "";
 
-		String[] s = subscribeGL.split("\\(id ");
+		// id를 먼저 읽어서 delivery가 잘못되었을 때의 fail 응답에도 넣는다
+		Matcher idMatcher = ID.matcher(subscribeGL);
+		if (idMatcher.find())
+			id = idMatcher.group(1);
+		else
+			id = SubscriptionRegistry.getInstance().nextId(sender);
+
+		// (trigger "edge") : 결과가 바뀔 때만, (trigger "level") : 맞을 때마다 notify (기본 SUBSCRIPTION_EDGE_TRIGGERED)
+		boolean edgeTriggered = Configuration.SUBSCRIPTION_EDGE_TRIGGERED;
+		Matcher trigger = TRIGGER.matcher(subscribeGL);
+		if (trigger.find()) {
+			edgeTriggered = trigger.group(1).equals("edge");
+			subscribeGL = trigger.replaceFirst("");
+		}
+
+		// (delivery (debounce ms) (maxWait ms) (maxRate n) (latestOnly) (minChange x)) : 빠지면 Configuration 기본값
+		DeliveryPolicy policy = DeliveryPolicy.defaults();
+		Matcher delivery = DELIVERY.matcher(subscribeGL);
+		if (delivery.find()) {
+			try {
+				policy = DeliveryPolicy.parse(delivery.group());
+			} catch (ParseException e) {
+				System.out.println("ERROR : " + e.getMessage().split("\n")[0]);
+				return "(subscribed \"fail\" \"" + id + "\")";
+			} catch (IllegalArgumentException e) {
+				System.out.println("ERROR : " + e.getMessage());
+				return "(subscribed \"fail\" \"" + id + "\")";
+			}
+			subscribeGL = subscribeGL.substring(0, delivery.start()) + subscribeGL.substring(delivery.end());
+		}
 
-		rule = s[0];
-		id = s[1].split("\\)| ")[0];
+		rule = subscribeGL.split("\\(id ")[0];
 		System.out.println("id print" + id);
 		System.out.println("Rule: "+rule);
 		
@@ -48,6 +84,9 @@ public class SubscribeAction implements ActionBody {
 
 
 		String convertedData = ContextMonitorParser.PushRuleToMonitorRule(rule);
+		if (convertedData == null) {
+			return "(subscribed \"fail\" \"" + id + "\")";
+		}
 		convertedData = convertedData.replaceAll("!ADDRESS!", sender);
 		String[] glToProlog = convertedData.split(":-");
 		Log.setSubscribeGLToProlog(glToProlog[0]);
@@ -56,8 +95,10 @@ public class SubscribeAction implements ActionBody {
 		System.out.println("converted subscribe rule = " + convertedData);
 
 		
-		t = "assert(" + convertedData + ")";
-		System.out.println(t + " " + (Query.hasSolution(t) ? "succeeded" : "failed"));
+		// monitor/1 절을 쌓지 않고 trigger predicate로 색인된 registry에 넣는다 (UnsubscribeAction으로 해제)
+		if (!SubscriptionRegistry.getInstance().subscribe(sender, id, rule, convertedData, edgeTriggered, policy)) {
+			return "(subscribed \"fail\" \"" + id + "\")";
+		}
 		return "(subscribed \"success\" \"" + id + "\")";
 		
 		
@@ -0,0 +1,35 @@
+package kgu.agent.demo.action;
+
+import kgu.agent.demo.actionArgument.UnsubscribeArgument;
+import kgu.agent.demo.prolog.SubscriptionRegistry;
+import kr.ac.uos.ai.arbi.agent.logger.action.ActionBody;
+
+public class UnsubscribeAction implements ActionBody {
+
+	@Override
+	public Object execute(Object o) {
+
+		UnsubscribeArgument Log = (UnsubscribeArgument) o;
+		String sender = Log.getSubscriber();
+		String id = parseID(Log.getSubscriptionID());
+
+		System.out.println();
+		System.out.println("---> onUnsubscribe() : ");
+		System.out.println("id = " + id + " from " + sender);
+
+		boolean unsubscribed = SubscriptionRegistry.getInstance().unsubscribe(sender, id);
+		Log.setUnsubscribed(unsubscribed);
+
+		return "(unsubscribed \"" + (unsubscribed ? "success" : "fail") + "\" \"" + id + "\")";
+	}
+
+	// "(id 1)" 또는 "1"
+	public static String parseID(String data) {
+		if (data.contains("id ")) {
+			data = data.split("id ")[1];
+			data = data.replace(")", "");
+		}
+		return data.replace("\"", "").trim();
+	}
+
+}
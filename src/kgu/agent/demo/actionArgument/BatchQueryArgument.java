@@ -0,0 +1,110 @@
+package kgu.agent.demo.actionArgument;
+
+import org.json.simple.JSONObject;
+
+public class BatchQueryArgument {
+
+	private String sender;
+	private String queryGL;
+	private int queryCount;
+	private int failedCount;
+	private String batchResult;
+	private double reasoningTime;
+
+
+
+	public BatchQueryArgument(String sender, String queryGL) {
+		this.sender = sender;
+		this.queryGL = queryGL;
+	}
+
+
+
+	public String getSender() {
+		return sender;
+	}
+
+
+
+	public void setSender(String sender) {
+		this.sender = sender;
+	}
+
+
+
+	public String getQueryGL() {
+		return queryGL;
+	}
+
+
+
+	public void setQueryGL(String queryGL) {
+		this.queryGL = queryGL;
+	}
+
+
+
+	public int getQueryCount() {
+		return queryCount;
+	}
+
+
+
+	public void setQueryCount(int queryCount) {
+		this.queryCount = queryCount;
+	}
+
+
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+
+
+	public void setFailedCount(int failedCount) {
+		this.failedCount = failedCount;
+	}
+
+
+
+	public String getBatchResult() {
+		return batchResult;
+	}
+
+
+
+	public void setBatchResult(String batchResult) {
+		this.batchResult = batchResult;
+	}
+
+
+
+	public double getReasoningTime() {
+		return reasoningTime;
+	}
+
+
+
+	public void setReasoningTime(double reasoningTime) {
+		this.reasoningTime = reasoningTime;
+	}
+
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+
+
+		obj.put("sender", sender);
+		obj.put("queryGL", queryGL);
+		obj.put("queryCount", queryCount);
+		obj.put("failedCount", failedCount);
+		obj.put("batchResult", batchResult);
+		obj.put("reasoningTime", reasoningTime);
+
+
+		return obj.toJSONString();
+	}
+
+}
@@ -7,6 +7,9 @@ public class GUIArgument {
 	private LowLevelContextMonitorArgument llcm;
 
 	private ContextOntologyMonitorArgument com;
+
+	// PrologEnginePool / SingleFlight 상태 (JSON), 없으면 null
+	private String queryEngine;
 	
 
 	@Override
@@ -15,6 +18,7 @@ public class GUIArgument {
 
 		obj.put("llcm", llcm.toString());
 		obj.put("com", com.toString());
+		obj.put("queryEngine", queryEngine);
 
 		return obj.toJSONString();
 	}
@@ -42,5 +46,15 @@ public class GUIArgument {
 	}
 
 
+	public String getQueryEngine() {
+		return queryEngine;
+	}
+
+
+	public void setQueryEngine(String queryEngine) {
+		this.queryEngine = queryEngine;
+	}
+
+
 
 }
@@ -2,6 +2,8 @@ package kgu.agent.demo.actionArgument;
 
 import org.json.simple.JSONObject;
 
+import kgu.agent.demo.Configuration;
+
 public class ReasoningQueryArgument {
 	
 	private String sender;
@@ -9,6 +11,14 @@ public class ReasoningQueryArgument {
 	private String queryToProlog;
 	private String queryResult;
 	private double reasoningTime;
+	private long timeLimit = Configuration.QUERY_TIME_LIMIT;
+	private long inferenceLimit = Configuration.QUERY_INFERENCE_LIMIT;
+	private String status = "success";
+	private int limit = 0;
+	private int offset = 0;
+	private int stream = 0;
+	private String aggregate;
+	private String aggregateVariable;
 
 	
 	
@@ -77,6 +87,102 @@ public class ReasoningQueryArgument {
 	public void setReasoningTime(double reasoningTime) {
 		this.reasoningTime = reasoningTime;
 	}
+
+
+
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+
+
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+
+
+	public long getInferenceLimit() {
+		return inferenceLimit;
+	}
+
+
+
+	public void setInferenceLimit(long inferenceLimit) {
+		this.inferenceLimit = inferenceLimit;
+	}
+
+
+
+	public String getStatus() {
+		return status;
+	}
+
+
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+
+
+	public int getLimit() {
+		return limit;
+	}
+
+
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+
+
+	public int getOffset() {
+		return offset;
+	}
+
+
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+
+
+	public int getStream() {
+		return stream;
+	}
+
+
+
+	public void setStream(int stream) {
+		this.stream = stream;
+	}
+
+
+
+	public String getAggregate() {
+		return aggregate;
+	}
+
+
+
+	public void setAggregate(String aggregate) {
+		this.aggregate = aggregate;
+	}
+
+
+
+	public String getAggregateVariable() {
+		return aggregateVariable;
+	}
+
+
+
+	public void setAggregateVariable(String aggregateVariable) {
+		this.aggregateVariable = aggregateVariable;
+	}
 	
 	
 	@Override
@@ -89,6 +195,7 @@ public class ReasoningQueryArgument {
 		obj.put("queryToProlog", queryToProlog);
 		obj.put("queryResult", queryResult);
 		obj.put("reasoningTime", reasoningTime);
+		obj.put("status", status);
 
 		
 		
@@ -0,0 +1,47 @@
+package kgu.agent.demo.actionArgument;
+
+import org.json.simple.JSONObject;
+
+public class UnsubscribeArgument {
+	private String subscriber;
+	private String subscriptionID;
+	private boolean unsubscribed;
+
+	public UnsubscribeArgument(String subscriber, String subscriptionID) {
+		this.subscriber = subscriber;
+		this.subscriptionID = subscriptionID;
+	}
+
+
+	public String getSubscriber() {
+		return subscriber;
+	}
+
+
+	public String getSubscriptionID() {
+		return subscriptionID;
+	}
+
+
+	public boolean isUnsubscribed() {
+		return unsubscribed;
+	}
+
+
+	public void setUnsubscribed(boolean unsubscribed) {
+		this.unsubscribed = unsubscribed;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+
+		obj.put("subscriber", subscriber);
+		obj.put("subscriptionID", subscriptionID);
+		obj.put("unsubscribed", unsubscribed);
+
+		return obj.toJSONString();
+	}
+
+
+}
@@ -8,18 +8,31 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.jpl7.Query;
 import org.jpl7.Term;
+import org.json.simple.JSONObject;
 
+import kgu.agent.demo.Configuration;
+import kgu.agent.demo.action.BatchQueryAction;
 import kgu.agent.demo.action.GUIAction;
 import kgu.agent.demo.action.LatestPerceptionAction;
+import kgu.agent.demo.action.NotificationDispatcher;
+import kgu.agent.demo.action.NotificationOutbox;
+import kgu.agent.demo.action.NotificationSink;
+import kgu.agent.demo.action.QueryResultStream;
 import kgu.agent.demo.action.ReasoningQueryAction;
+import kgu.agent.demo.action.SubscribeAction;
+import kgu.agent.demo.action.UnsubscribeAction;
+import kgu.agent.demo.actionArgument.BatchQueryArgument;
 import kgu.agent.demo.actionArgument.ContextOntologyMonitorArgument;
 import kgu.agent.demo.actionArgument.GUIArgument;
 import kgu.agent.demo.actionArgument.LatestPerceptionArgument;
 import kgu.agent.demo.actionArgument.LowLevelContextMonitorArgument;
 import kgu.agent.demo.actionArgument.ReasoningQueryArgument;
+import kgu.agent.demo.actionArgument.UnsubscribeArgument;
 import kr.ac.uos.ai.arbi.BrokerType;
 import kr.ac.uos.ai.arbi.agent.ArbiAgent;
 import kr.ac.uos.ai.arbi.agent.ArbiAgentExecutor;
@@ -30,6 +43,14 @@ import kr.ac.uos.ai.arbi.ltm.DataSource;
 import kgu.agent.demo.actionArgument.SubscribeArgument;
 
 import kgu.agent.demo.paser.ContextMonitorParser;
+import kgu.agent.demo.prolog.Geometry;
+import kgu.agent.demo.prolog.MaterializedViews;
+import kgu.agent.demo.prolog.NamespaceCodec;
+import kgu.agent.demo.prolog.PrologEnginePool;
+import kgu.agent.demo.prolog.PrologTabling;
+import kgu.agent.demo.prolog.SingleFlight;
+import kgu.agent.demo.prolog.SpatialIndex;
+import kgu.agent.demo.prolog.SubscriptionRegistry;
 import kr.ac.uos.ai.arbi.model.GLFactory;
 import kr.ac.uos.ai.arbi.model.GeneralizedList;
 import kr.ac.uos.ai.arbi.model.Expression;
@@ -42,7 +63,9 @@ public class Robot_CM extends ArbiAgent {
 	// private GeneralizedList eventGL;
 	private Map<String, String> taskManagerSubsList;
 	public AgentAction reasoningAction;
+	public AgentAction batchQueryAction;
 	public AgentAction subscribeAction;
+	public AgentAction unsubscribeAction;
 	public AgentAction notifyAction;
 	public AgentAction perceptionSubscriptionsAction;
 	public AgentAction tripleCountAction;
@@ -61,10 +84,19 @@ public class Robot_CM extends ArbiAgent {
 	public static String brokerAddress;
 	LatestPerceptionAction action8;
 	DataSource ds;
+	PrologEnginePool enginePool;
+	SingleFlight<String> singleFlight = new SingleFlight<String>();
+	NotificationOutbox notificationOutbox;
 	public Robot_CM(String robotID, String brokerAddress, int brokerPort) {
 		this.brokerAddress = brokerAddress;
 		ArbiAgentExecutor.execute(brokerAddress, brokerPort,CONTEXTMANAGER_ADRESS, this, BrokerType.ACTIVEMQ);
 		init_prolog();
+		NamespaceCodec.loadFromProlog();
+		MaterializedViews.loadFromProlog();
+		SpatialIndex.loadFromProlog();
+		PrologTabling.enable();
+		Geometry.enable();
+		enginePool = new PrologEnginePool(Configuration.PROLOG_ENGINE_POOL_SIZE);
 		ds = new DataSource(){
 			boolean Subscripting_start = false;
 
@@ -130,13 +162,37 @@ public class Robot_CM extends ArbiAgent {
 		};
 				
 		ReasoningQueryAction action1 = new ReasoningQueryAction(ds);
+		action1.setResultStream(new QueryResultStream() {
+			@Override
+			public void onResult(String receiver, String result) {
+				send(receiver, result);
+			}
+		});
 		reasoningAction = new AgentAction("ContextService", action1);
 		LoggerManager.getInstance().registerAction(reasoningAction, LogTiming.Later);
 
+		batchQueryAction = new AgentAction("ContextBatchService", new BatchQueryAction(action1));
+		LoggerManager.getInstance().registerAction(batchQueryAction, LogTiming.Later);
+
 		action8 = new LatestPerceptionAction();
 		latestPerceptionAction = new AgentAction("RobotContext", action8);
 		LoggerManager.getInstance().registerAction(latestPerceptionAction, LogTiming.Later);
 
+		subscribeAction = new AgentAction("ContextSubscribe", new SubscribeAction());
+		LoggerManager.getInstance().registerAction(subscribeAction, LogTiming.Later);
+
+		unsubscribeAction = new AgentAction("ContextUnsubscribe", new UnsubscribeAction());
+		LoggerManager.getInstance().registerAction(unsubscribeAction, LogTiming.Later);
+
+		// 구독 규칙이 맞으면 arbi_subscription -> NotificationDispatcher thread -> 구독자별 outbox -> notify
+		notificationOutbox = new NotificationOutbox(new NotificationSink() {
+			@Override
+			public void onNotification(String subscriber, String notification) {
+				Robot_CM.this.notify(subscriber, notification);
+			}
+		});
+		NotificationDispatcher.getInstance().start(notificationOutbox);
+
 		ds.connect(brokerAddress, brokerPort,"ds://www.arbi.com/ContextManager", BrokerType.ACTIVEMQ);
 		ds.subscribe("(rule (fact (robotPosition $robotID $x $y)) --> (notify (robotPosition $robotID $x $y)))");
 		ds.subscribe("(rule (fact (robotStatus $robotID $x)) --> (notify (robotStatus $robotID $x)))");
@@ -150,6 +206,18 @@ public class Robot_CM extends ArbiAgent {
 	public void onNotify(String sender, String notification) {
 		System.out.println(notification);
 	}
+
+	@Override
+	public String onSubscribe(String sender, String subscribeGL) {
+		return (String) subscribeAction.execute(new SubscribeArgument(sender, subscribeGL));
+	}
+
+	@Override
+	public void onUnsubscribe(String sender, String subID) {
+		unsubscribeAction.execute(new UnsubscribeArgument(sender, subID));
+		if (!SubscriptionRegistry.getInstance().hasSubscriber(sender))
+			notificationOutbox.remove(sender);
+	}
 	
 	
 	public String onQuery(String sender, String queryGL) {
@@ -161,17 +229,73 @@ public class Robot_CM extends ArbiAgent {
 		
 		//predicate = queryGL.split(" ")[1].replace("(", "");
 				
-		ReasoningQueryArgument rqArgument = new ReasoningQueryArgument(sender, queryGL);
-		ReasoningQueryAction action1 = new ReasoningQueryAction(ds);
+		// 질의 서비스(reasoningAction)는 생성자에서 한 번만 만들어 등록하고 여기서는 요청 인자만 만든다
+		final Object rqArgument;
+		final AgentAction queryAction;
+		if (BatchQueryAction.isBatch(queryGL)) {
+			// (batch ...) 의 하위 질의들은 엔진 하나를 한 번만 빌려서 모두 처리한다
+			rqArgument = new BatchQueryArgument(sender, queryGL);
+			queryAction = batchQueryAction;
+		} else {
+			rqArgument = new ReasoningQueryArgument(sender, queryGL);
+			queryAction = reasoningAction;
+		}
 		
-		reasoningAction = new AgentAction("ContextService", action1);
+		// run on a pooled Prolog engine so independent queries don't serialize
+		// (ordered by the priority class of the sender, see QueryScheduler)
+		final Callable<String> pooled = new Callable<String>() {
+			@Override
+			public String call() {
+				return enginePool.execute(sender, new Callable<String>() {
+					@Override
+					public String call() {
+						return (String) queryAction.execute(rqArgument);
+					}
+				});
+			}
+		};
 		
-		String queryResult = (String) reasoningAction.execute(rqArgument);
+		// 같은 질의가 이미 실행 중이면 다시 돌리지 않고 그 결과를 같이 받는다
+		String queryResult;
+		try {
+			queryResult = singleFlight.execute(flightKey(sender, queryGL), pooled);
+		} catch (RejectedExecutionException e) {
+			queryResult = "(error \"overloaded\" \"" + e.getMessage() + "\")";
+		} catch (Exception e) {
+			e.printStackTrace();
+			// ReasoningQueryAction의 queryError와 같은 형식
+			String error = String.valueOf(e.getCause() != null ? e.getCause() : e).replace("\"", "'");
+			queryResult = "(error \"exception\" \"" + error + "\")";
+		}
 		System.out.println("queryResult : " + queryResult);
 		
 		return queryResult;
 	}
 
+	// 질의 엔진 상태 (대기열 길이, 평균/최대 대기, 실패/버린 질의 ... 는 PrologEnginePool.toString)
+	// GUIArgument.setQueryEngine(...) 으로 넘기면 GUIAction 이 queryEngine.json 에 쓴다
+	public String getQueryEngineStatus() {
+		JSONObject obj = new JSONObject();
+		obj.put("pool", enginePool.toString());
+		obj.put("singleFlight", singleFlight.toString());
+		return obj.toJSONString();
+	}
+
+	// 공백 등 표기 차이를 없앤 질의 GL + 우선순위 클래스 (다른 클래스의 질의를 기다리다 같이 버려지지 않게)
+	// stream 질의는 결과가 요청자에게 따로 가므로 공유하지 않는다 (null)
+	private String flightKey(String sender, String queryGL) {
+		if (!Configuration.QUERY_SINGLE_FLIGHT)
+			return null;
+		try {
+			String normalized = GLFactory.newGLFromGLString(queryGL).toString();
+			if (normalized.contains("(stream "))
+				return null;
+			return enginePool.getPriorityClass(sender) + " " + normalized;
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
 	public static void main(String[] args) {
 		String brokerAddress;
 		String robotID;
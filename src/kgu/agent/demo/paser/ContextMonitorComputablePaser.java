@@ -1,205 +1,195 @@
 package kgu.agent.demo.paser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+
+// computable predicate 구독의 monitor 절
+// 예전에는 P.contains("near") 같은 비교로 찾아서 nearby 같은 이름도 걸렸고, 부를 때마다 S/P/O를 출력했다.
+// 이제 computable마다 한 번 등록한다 : IRI, 이 값을 바꿀 수 있는 perception type, 규칙 몸체 template.
+// monitor 절은 그 perception type이 assert될 때만 걸리고 (arbi_subscription이 rdf:type으로 색인, 나머지 rdf/3는 arbi_rete가 맞춘다),
+// 몸체는 등록할 때 미리 잘라 둔 template에 S, O만 채운다.
 public class ContextMonitorComputablePaser {
 
-	// ���� prefix�� �پ��־�� ��.
-	private static String locatedInRoom = "locatedInRoom";
-	private static String inFrontAreaOfRoom = "inFrontAreaOfRoom";
-	private static String insideAreaOfRoom = "insideAreaOfRoom";
-	private static String emptyBattery = "emptyBattery";
-	private static String batteryRemain = "batteryRemain";
-	private static String batteryStatus = "batteryStatus";
-	private static String voicePerceived = "voicePerceived";
-	private static String facePerceived = "facePerceived";
-	private static String speechContents = "speechContents";
-	private static String notFollowRobot = "notFollowRobot";
-	private static String near = "near";
-
-	public static String getPredicate(String P) {
-		if (P.contains(locatedInRoom))
-			return locatedInRoom;
-		else if (P.contains(inFrontAreaOfRoom))
-			return inFrontAreaOfRoom;
-		else if (P.contains(insideAreaOfRoom))
-			return insideAreaOfRoom;
-		else if (P.contains(emptyBattery))
-			return emptyBattery;
-		else if (P.contains(batteryStatus))
-			return batteryStatus;
-		else if (P.contains(batteryRemain))
-			return batteryRemain;
-		else if (P.contains(voicePerceived))
-			return voicePerceived;
-		else if (P.contains(facePerceived))
-			return facePerceived;
-		else if (P.contains(speechContents))
-			return speechContents;
-		else if (P.contains(notFollowRobot))
-			return notFollowRobot;
-		else if (P.contains(near))
-			return near;
-
-		else
-			return "";
+	public static final String ARBI = "http://www.arbi.com/ontologies/arbi.owl#";
+	public static final String KNOWROB = "http://knowrob.org/kb/knowrob.owl#";
+	public static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+	// template의 perception 변수 (사용자 변수는 $x -> X 라서 '_'로 시작하는 이름과 겹치지 않는다)
+	private static final String PERCEPTION = "_Perception";
+
+	// IRI -> computable, 로컬 이름 -> computable
+	private static final Map<String, Computable> byIRI = new LinkedHashMap<String, Computable>();
+	private static final Map<String, Computable> byName = new LinkedHashMap<String, Computable>();
+	// perception type IRI -> 그 perception으로 다시 계산되는 computable
+	private static final Map<String, List<Computable>> byPerception = new LinkedHashMap<String, List<Computable>>();
+
+	static {
+		String acted = "rdf({X}, '" + KNOWROB + "objectActedOn', {S})";
+		String actedOnO = "rdf({X}, '" + KNOWROB + "objectActedOn', {O})";
+
+		register(ARBI + "locatedInRoom", ARBI + "LocationPerception", PERCEPTION,
+				acted, computed(ARBI + "locatedInRoom"));
+		register(ARBI + "inFrontAreaOfRoom", ARBI + "LocationPerception", PERCEPTION,
+				acted, computed(ARBI + "inFrontAreaOfRoom"));
+		register(ARBI + "insideAreaOfRoom", ARBI + "LocationPerception", PERCEPTION,
+				acted, computed(ARBI + "insideAreaOfRoom"));
+		register(ARBI + "notFollowRobot", ARBI + "LocationPerception", PERCEPTION,
+				actedOnO, computed(ARBI + "notFollowRobot"));
+
+		register(ARBI + "emptyBattery", ARBI + "BatteryPerception", PERCEPTION,
+				acted, computed(ARBI + "emptyBattery"));
+		register(ARBI + "batteryStatus", ARBI + "BatteryPerception", PERCEPTION,
+				acted, computed(ARBI + "batteryStatus"));
+		register(ARBI + "batteryRemain", ARBI + "BatteryPerception", PERCEPTION,
+				acted, computed(ARBI + "batteryRemain"));
+
+		// perception 자체에서 읽는 것 : S 쪽이 perception이거나 perception의 대상
+		register(ARBI + "voicePerceived", ARBI + "SpeechPerception", PERCEPTION,
+				acted, "rdf({X}, '" + ARBI + "speechContents', {O})");
+		register(ARBI + "speechContents", ARBI + "SpeechPerception", "{S}",
+				"rdf({X}, '" + ARBI + "speechContents', {O})");
+		register(ARBI + "facePerceived", KNOWROB + "VisualPerception", "{S}",
+				actedOnO);
+		register(ARBI + "near", KNOWROB + "VisualPerception", PERCEPTION,
+				actedOnO, computed(ARBI + "near"));
 	}
 
-	public static boolean isComputable(String P) {
-		if (P.contains(locatedInRoom)) {
-			return true;
-		} else if (P.contains(inFrontAreaOfRoom))
-			return true;
-		else if (P.contains(insideAreaOfRoom))
-			return true;
-		else if (P.contains(emptyBattery))
-			return true;
-		else if (P.contains(batteryStatus))
-			return true;
-		else if (P.contains(batteryRemain))
-			return true;
-		else if (P.contains(voicePerceived))
-			return true;
-		else if (P.contains(facePerceived))
-			return true;
-		else if (P.contains(speechContents))
-			return true;
-		else if (P.contains(notFollowRobot))
-			return true;
-		else if (P.contains(near))
-			return true;
-
-		return false;
+	private static String computed(String iri) {
+		return "rdf_triple('" + iri + "', {S}, {O})";
 	}
 
-	public static String getComputableMonitor(String S, String P, String O) {
-
-		if (P.contains(locatedInRoom)) {
-
-			return "monitor(assert(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn', " + S
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, println, ['dynamic monitor occured !!'], Sys), "
-					+ "\n\trdf(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type', 'http://www.arbi.com/ontologies/arbi.owl#LocationPerception'),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#locatedInRoom'," + S + ", " + O + "),";
-
-		}
-
-		else if (P.contains(inFrontAreaOfRoom)) {
-			System.out.println(S);
-			System.out.println(O);
-			return "monitor(assert(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn', " + S
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type', 'http://www.arbi.com/ontologies/arbi.owl#LocationPerception'),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#inFrontAreaOfRoom'," + S + ", " + O
-					+ "),";
-
+	// iri : computable predicate, perceptionType : 이 값을 바꾸는 perception의 rdf:type
+	// perception : monitor 머리의 perception 변수 (PERCEPTION 또는 {S})
+	// conditions : perception type assert 뒤에 맞출 조건, {X} perception, {S} {O} 구독 규칙의 값
+	static void register(String iri, String perceptionType, String perception, String... conditions) {
+		StringBuilder body = new StringBuilder("monitor(assert({X}, '" + RDF_TYPE + "', '" + perceptionType
+				+ "', DB)) :- (");
+		for (String condition : conditions)
+			body.append("\n\t").append(condition).append(",");
+		Computable computable = new Computable(iri, perceptionType,
+				new Template(body.toString().replace("{X}", perception)));
+
+		byIRI.put(iri, computable);
+		byName.put(computable.getName(), computable);
+		List<Computable> computables = byPerception.get(perceptionType);
+		if (computables == null) {
+			computables = new ArrayList<Computable>();
+			byPerception.put(perceptionType, computables);
 		}
+		computables.add(computable);
+	}
 
-		else if (P.contains(insideAreaOfRoom)) {
+	// P : 'IRI', IRI 또는 prefix 없는 이름, 같은 IRI나 같은 이름만 찾는다
+	public static Computable lookup(String P) {
+		String p = P.trim();
+		if (p.length() > 1 && p.startsWith("'") && p.endsWith("'"))
+			p = p.substring(1, p.length() - 1);
+		if (p.contains("#") || p.contains(":"))
+			return byIRI.get(p);
+		return byName.get(p);
+	}
 
-			return "monitor(assert(X1, 'http://knowrob.org/kb/knowrob.owl#objectActedon', S1, DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn', " + S + "),"
-					+ "\n\trdf(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type', 'http://www.arbi.com/ontologies/arbi.owl#LocationPerception'),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#insideAreaOfRoom'," + S + ", " + O
-					+ "),";
+	public static String getPredicate(String P) {
+		Computable computable = lookup(P);
+		return computable == null ? "" : computable.getName();
+	}
 
-		}
+	public static boolean isComputable(String P) {
+		return lookup(P) != null;
+	}
 
-		else if (P.contains(emptyBattery)) {
+	// 규칙의 첫 fact (P S O) 를 monitor 절 머리와 조건으로, 뒤에 다른 조건과 notify가 붙는다
+	public static String getComputableMonitor(String S, String P, String O) {
+		Computable computable = lookup(P);
+		if (computable == null)
+			throw new IllegalArgumentException("not a computable predicate : " + P);
+		return computable.getMonitor(S, O);
+	}
 
-			return "monitor(assert(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://www.arbi.com/ontologies/arbi.owl#BatteryPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn'," + S + "),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					// + "\n\temptyBattery("+S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#emptyBattery'," + S + ", " + O + "),";
+	// perceptionType IRI가 assert될 때 다시 계산되는 computable
+	public static List<Computable> getComputables(String perceptionType) {
+		List<Computable> computables = byPerception.get(perceptionType);
+		return computables == null ? Collections.<Computable> emptyList()
+				: Collections.unmodifiableList(computables);
+	}
 
+	public static String getRegistry() {
+		JSONObject obj = new JSONObject();
+		for (Map.Entry<String, List<Computable>> e : byPerception.entrySet()) {
+			List<String> names = new ArrayList<String>();
+			for (Computable computable : e.getValue())
+				names.add(computable.getName());
+			obj.put(e.getKey(), names.toString());
 		}
+		return obj.toJSONString();
+	}
 
-		else if (P.contains(batteryStatus)) {
-
-			return "monitor(assert(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://www.arbi.com/ontologies/arbi.owl#BatteryPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn'," + S + "),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					// + "\n\temptyBattery("+S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#batteryStatus'," + S + ", " + O + "),";
-
+	public static class Computable {
+		private final String iri;
+		private final String name;
+		private final String perceptionType;
+		private final Template monitor;
+
+		Computable(String iri, String perceptionType, Template monitor) {
+			this.iri = iri;
+			this.name = iri.substring(iri.lastIndexOf('#') + 1);
+			this.perceptionType = perceptionType;
+			this.monitor = monitor;
 		}
 
-		else if (P.contains(batteryRemain)) {
-
-			return "monitor(assert(X, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://www.arbi.com/ontologies/arbi.owl#BatteryPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(X, 'http://knowrob.org/kb/knowrob.owl#objectActedOn'," + S + "),"
-					// + "\n\tcomp_locatedInRoom(" + S + ", " + O + "),";
-					// + "\n\temptyBattery("+S + ", " + O + "),";
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#batteryRemain'," + S + ", " + O + "),";
-
+		public String getIRI() {
+			return iri;
 		}
 
-		else if (P.contains(voicePerceived)) {
-			System.out.println("s" + S);
-			System.out.println("p" + P);
-			System.out.println("o" + O);
-
-			return "monitor(assert(" + "VoicePerception"
-					+ ", 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://www.arbi.com/ontologies/arbi.owl#SpeechPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), " + "\n\trdf("
-					+ "VoicePerception" + ", 'http://knowrob.org/kb/knowrob.owl#objectActedOn'," + S + ")," + "\n\trdf("
-					+ "VoicePerception" + ", 'http://www.arbi.com/ontologies/arbi.owl#speechContents'," + O + "),";
-
+		public String getName() {
+			return name;
 		}
 
-		else if (P.contains(speechContents)) {
-			System.out.println("s" + S);
-			System.out.println("p" + P);
-			System.out.println("o" + O);
-
-			return "monitor(assert(" + S
-					+ ", 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://www.arbi.com/ontologies/arbi.owl#SpeechPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), " + "\n\trdf("
-					+ S + ", 'http://www.arbi.com/ontologies/arbi.owl#speechContents'," + O + "),";
-
+		public String getPerceptionType() {
+			return perceptionType;
 		}
 
-		else if (P.contains(facePerceived)) {
-			System.out.println("s" + S);
-			System.out.println("p" + P);
-			System.out.println("o" + O);
-
-			return "monitor(assert(" + S
-					+ ", 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type','http://knowrob.org/kb/knowrob.owl#VisualPerception'"
-					+ ", DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), " + "\n\trdf("
-					+ S + ", 'http://knowrob.org/kb/knowrob.owl#objectActedOn'," + O + "),";
-
+		public String getMonitor(String S, String O) {
+			return monitor.render(S, O);
 		}
+	}
 
-		else if (P.contains(near)) {
-			System.out.println("s" + S);
-			System.out.println("p" + P);
-			System.out.println("o" + O);
-
-			return "monitor(assert(VP, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type', 'http://knowrob.org/kb/knowrob.owl#VisualPerception', DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-					+ "\n\trdf(VP, 'http://knowrob.org/kb/knowrob.owl#objectActedOn', " + O + "),"
-					+ "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#near'," + S + ", " + O+ "),";
-
+	// {S}, {O} 자리에서 미리 잘라 둔 문자열
+	static class Template {
+		private final String[] parts;
+		// parts[i] 뒤에 올 값 : 'S' 또는 'O'
+		private final char[] slots;
+
+		Template(String template) {
+			List<String> parts = new ArrayList<String>();
+			StringBuilder slots = new StringBuilder();
+			int start = 0;
+			while (true) {
+				int s = template.indexOf("{S}", start);
+				int o = template.indexOf("{O}", start);
+				int i = s < 0 ? o : o < 0 ? s : Math.min(s, o);
+				if (i < 0)
+					break;
+				parts.add(template.substring(start, i));
+				slots.append(i == s ? 'S' : 'O');
+				start = i + 3;
+			}
+			parts.add(template.substring(start));
+			this.parts = parts.toArray(new String[0]);
+			this.slots = slots.toString().toCharArray();
 		}
 
-		else if (P.contains(notFollowRobot)) {
-			System.out.println("s" + S);
-			System.out.println("p" + P);
-			System.out.println("o" + O);
-			// 차후 수정이 필요한 부분.
-			
-			return "monitor(assert(LP, 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type', 'http://www.arbi.com/ontologies/arbi.owl#LocationPerception', DB)) :- (jpl_get('java.lang.System', out, Out), jpl_call(Out, print, [''], Sys), "
-			 + "\n\trdf(LP, 'http://knowrob.org/kb/knowrob.owl#objectActedOn', " + O + "),"
-			 + "\n\trdf_triple('http://www.arbi.com/ontologies/arbi.owl#notFollowRobot'," + S + ", " + O + "),";
-			
-
+		String render(String S, String O) {
+			StringBuilder sb = new StringBuilder(256);
+			for (int i = 0; i < slots.length; i++)
+				sb.append(parts[i]).append(slots[i] == 'S' ? S : O);
+			return sb.append(parts[parts.length - 1]).toString();
 		}
-
-		return "ERROR : in getComputableMonitor()";
 	}
 
 }
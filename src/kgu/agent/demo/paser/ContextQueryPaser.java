@@ -1,5 +1,7 @@
 package kgu.agent.demo.paser;
 
+import kgu.agent.demo.prolog.NamespaceCodec;
+
 public class ContextQueryPaser {
 	
 	
@@ -20,14 +22,7 @@ public class ContextQueryPaser {
 	}
 
 	public static String prefixToURI(String s) {
-
-		s = s.replaceAll("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-		s = s.replaceAll("knowrob:", "http://knowrob.org/kb/knowrob.owl#");
-		s = s.replaceAll("arbi:", "http://www.arbi.com/ontologies/arbi.owl#");
-
-		s = "'" + s + "'";
-
-		return s;
+		return "'" + NamespaceCodec.getInstance().expand(s) + "'";
 	}
 
 }
@@ -0,0 +1,314 @@
+package kgu.agent.demo.paser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+import kr.ac.uos.ai.arbi.model.Expression;
+import kr.ac.uos.ai.arbi.model.GLFactory;
+import kr.ac.uos.ai.arbi.model.GeneralizedList;
+import kr.ac.uos.ai.arbi.model.parser.ParseException;
+
+// 구독 규칙 (rule (fact ...) (expression ...) --> (notify ...)) 을 rdf_monitor용 monitor/2 절로 바꾼다
+// 규칙은 GLFactory로 파싱해서 GL 트리로 검사하고, 결과는 공백을 정리한 규칙 문자열을 키로 캐시한다.
+// ARBI GL 문법은 arbi:turtlebot01 같은 따옴표 없는 값을 받지 않으므로 파싱 전에 값 위치의 토큰만 "..."로 감싼다.
+public class MonitorRuleCompiler {
+
+	private static final MonitorRuleCompiler instance = new MonitorRuleCompiler(1024);
+
+	// GL 이름 자리에는 $p 가 올 수 없어서 quoteValues가 이 이름으로 바꿔 두고, generate가 변수 P로 되돌린다
+	static final String VARIABLE_NAME = "__var__";
+
+	public static MonitorRuleCompiler getInstance() {
+		return instance;
+	}
+
+	private final Map<String, String> cache;
+
+	private final AtomicLong compiled = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	private volatile long lastMicros = 0;
+
+	public MonitorRuleCompiler(final int cacheSize) {
+		cache = new LinkedHashMap<String, String>(64, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	// monitor(...) :- (...) 절, 규칙이 잘못되었으면 null
+	public String compile(String rule) {
+		long start = System.nanoTime();
+		String key = normalize(rule);
+		String monitorRule;
+		synchronized (cache) {
+			monitorRule = cache.get(key);
+		}
+		if (monitorRule != null) {
+			cacheHits.incrementAndGet();
+			lastMicros = (System.nanoTime() - start) / 1000;
+			return monitorRule;
+		}
+
+		try {
+			monitorRule = generate(GLFactory.newGLFromGLString(quoteValues(key)));
+		} catch (ParseException e) {
+			System.out.println("ERROR : " + e.getMessage().split("\n")[0]);
+		} catch (IllegalArgumentException e) {
+			System.out.println("ERROR : " + e.getMessage());
+		}
+
+		long nanos = System.nanoTime() - start;
+		lastMicros = nanos / 1000;
+		if (monitorRule == null) {
+			rejected.incrementAndGet();
+			return null;
+		}
+		compiled.incrementAndGet();
+		compileNanos.addAndGet(nanos);
+		synchronized (cache) {
+			cache.put(key, monitorRule);
+		}
+		return monitorRule;
+	}
+
+	private String generate(GeneralizedList rule) {
+		if (!rule.getName().equals("rule"))
+			throw new IllegalArgumentException("Missing string : \"(rule \"");
+
+		List<GeneralizedList> conditions = new ArrayList<GeneralizedList>();
+		List<GeneralizedList> actions = new ArrayList<GeneralizedList>();
+		boolean arrow = false;
+		for (int i = 0; i < rule.getExpressionsSize(); i++) {
+			Expression e = rule.getExpression(i);
+			if (e.isValue() && e.asValue().stringValue().equals("-->"))
+				arrow = true;
+			else if (!e.isGeneralizedList())
+				throw new IllegalArgumentException("unexpected " + e + " in rule");
+			else if (!arrow)
+				conditions.add(e.asGeneralizedList());
+			// (id N)는 SubscribeAction이 따로 읽는다
+			else if (!e.asGeneralizedList().getName().equals("id"))
+				actions.add(e.asGeneralizedList());
+		}
+		if (!arrow)
+			throw new IllegalArgumentException("Missing \"-->\" in rule");
+		if (conditions.isEmpty() || !conditions.get(0).getName().equals("fact"))
+			throw new IllegalArgumentException("first line of condition must be 'fact'");
+		if (actions.isEmpty())
+			throw new IllegalArgumentException("rule has no action");
+		// notify는 monitor 절 몸체의 마지막 goal이라 하나만 받는다
+		if (actions.size() > 1)
+			throw new IllegalArgumentException("only one 'notify' action is allowed : " + actions);
+
+		StringBuilder monitorRule = new StringBuilder();
+		for (int i = 0; i < conditions.size(); i++) {
+			GeneralizedList condition = conditions.get(i);
+			GeneralizedList fact = body(condition);
+			String P = predicate(fact.getName());
+			String[] args = args(fact, false);
+
+			if (i == 0) {
+				if (args.length != 2)
+					throw new IllegalArgumentException("first fact must be a triple (P S O) : " + condition);
+				if (ContextMonitorComputablePaser.isComputable(P))
+					monitorRule.append(ContextMonitorComputablePaser.getComputableMonitor(args[0], P, args[1]));
+				else
+					monitorRule.append("monitor(assert(" + args[0] + ", " + P + ", " + args[1] + "), DB) :- (");
+			} else if (isVariable(fact.getName()) && (args.length != 2 || !condition.getName().equals("fact"))) {
+				throw new IllegalArgumentException("variable predicate must be in a triple fact (P S O) : " + condition);
+			} else if (condition.getName().equals("expression")) {
+				String predicate = ContextMonitorComputablePaser.getPredicate(P);
+				if (predicate.isEmpty())
+					predicate = localName(fact.getName());
+				monitorRule.append("\n\t" + predicate + "(" + String.join(", ", args) + "),");
+			} else if (condition.getName().equals("fact")) {
+				if (args.length == 2)
+					monitorRule.append("\n\trdf(" + args[0] + ", " + P + ", " + args[1] + "),");
+				else
+					monitorRule.append("\n\t" + localName(fact.getName()) + "(" + String.join(", ", args) + "),");
+			} else {
+				throw new IllegalArgumentException(
+						"In case of the line that is not first, condition must be 'fact' or 'expression' : " + condition);
+			}
+		}
+
+		for (GeneralizedList action : actions) {
+			if (!action.getName().equals("notify"))
+				throw new IllegalArgumentException("only line of action must be 'notify(P S O)' : " + action);
+			GeneralizedList fact = body(action);
+			String[] args = args(fact, true);
+			if (args.length != 2)
+				throw new IllegalArgumentException("only line of action must be 'notify(P S O)' : " + action);
+
+			String P;
+			if (isVariable(fact.getName())) {
+				P = predicate(fact.getName());
+			} else {
+				P = ContextMonitorParser.literalConversion(fact.getName());
+				if (P.contains(":"))
+					P = "'" + P + "'";
+			}
+			// 구독자는 arbi_subscription이 규칙의 id로 알고 있다 (NotificationDispatcher)
+			monitorRule.append("\n\tterm_to_atom(" + args[0] + ", SA),");
+			monitorRule.append("\n\tterm_to_atom(" + P + ", PA),");
+			monitorRule.append("\n\tterm_to_atom(" + args[1] + ", OA),");
+			monitorRule.append("\n\tsubscription_notify(SA, PA, OA))");
+		}
+		return monitorRule.toString();
+	}
+
+	// (fact (P ...)) -> (P ...)
+	private static GeneralizedList body(GeneralizedList line) {
+		if (line.getExpressionsSize() != 1 || !line.getExpression(0).isGeneralizedList())
+			throw new IllegalArgumentException("'" + line.getName() + "' needs one (P ...) : " + line);
+		return line.getExpression(0).asGeneralizedList();
+	}
+
+	// $x -> X, 'v' -> literal(type(...)), prefix:name -> 'IRI' (notify에서는 prefix를 풀지 않고 따옴표만 붙인다)
+	private static String[] args(GeneralizedList fact, boolean action) {
+		String[] args = new String[fact.getExpressionsSize()];
+		for (int i = 0; i < args.length; i++) {
+			Expression e = fact.getExpression(i);
+			if (e.isVariable()) {
+				args[i] = e.asVariable().getName().replace("$", "").toUpperCase();
+				continue;
+			}
+			if (!e.isValue())
+				throw new IllegalArgumentException("unexpected " + e + " in " + fact.getName());
+
+			String s = e.asValue().getType() == kr.ac.uos.ai.arbi.model.Value.Type.STRING
+					? e.asValue().stringValue() : e.toString();
+			if (action) {
+				s = ContextMonitorParser.literalConversion(s);
+				args[i] = s.contains(":") ? "'" + s + "'" : s;
+			} else {
+				args[i] = term(s);
+			}
+		}
+		return args;
+	}
+
+	// (P ...) 의 P : $p 는 변수 P, 나머지는 term()
+	private static String predicate(String name) {
+		if (isVariable(name))
+			return name.substring(VARIABLE_NAME.length()).toUpperCase();
+		return term(name);
+	}
+
+	private static boolean isVariable(String name) {
+		return name.startsWith(VARIABLE_NAME) && name.length() > VARIABLE_NAME.length();
+	}
+
+	private static String term(String s) {
+		s = ContextMonitorParser.literalConversion(s);
+		return s.contains(":") ? ContextMonitorParser.prefixToURI(s) : s;
+	}
+
+	private static String localName(String name) {
+		return name.substring(Math.max(name.lastIndexOf(':'), name.lastIndexOf('#')) + 1);
+	}
+
+	// 따옴표 밖의 공백을 한 칸으로 줄이고, SubscribeAction이 (id ...) 앞에서 잘라 모자라게 된 ')'를 채운다
+	public static String normalize(String rule) {
+		StringBuilder sb = new StringBuilder(rule.length());
+		int depth = 0;
+		char quote = 0;
+		for (int i = 0; i < rule.length(); i++) {
+			char ch = rule.charAt(i);
+			if (quote != 0) {
+				sb.append(ch);
+				if (ch == quote)
+					quote = 0;
+			} else if (Character.isWhitespace(ch)) {
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ' && sb.charAt(sb.length() - 1) != '(')
+					sb.append(' ');
+			} else {
+				if (ch == ')' && sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ')
+					sb.setLength(sb.length() - 1);
+				if (ch == '"' || ch == '\'')
+					quote = ch;
+				else if (ch == '(')
+					depth++;
+				else if (ch == ')')
+					depth--;
+				sb.append(ch);
+			}
+		}
+		if (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ')
+			sb.setLength(sb.length() - 1);
+		for (; depth > 0; depth--)
+			sb.append(')');
+		return sb.toString();
+	}
+
+	// 값 위치의 따옴표 없는 토큰(arbi:turtlebot01)과 '...' 리터럴을 GL 문자열 "..." 로 바꾼다
+	// '(' 바로 뒤의 이름, $변수, 숫자, "...", --> 는 그대로 둔다 ('(' 바로 뒤의 $p 는 VARIABLE_NAME + p)
+	public static String quoteValues(String rule) {
+		StringBuilder sb = new StringBuilder(rule.length() + 32);
+		int i = 0;
+		boolean namePosition = false;
+		while (i < rule.length()) {
+			char ch = rule.charAt(i);
+			if (ch == '(' || ch == ')' || ch == ' ') {
+				namePosition = ch == '(';
+				sb.append(ch);
+				i++;
+				continue;
+			}
+
+			int end = i + 1;
+			if (ch == '"' || ch == '\'') {
+				while (end < rule.length() && rule.charAt(end) != ch)
+					end++;
+				end = Math.min(end + 1, rule.length());
+			} else {
+				while (end < rule.length() && " ()".indexOf(rule.charAt(end)) < 0)
+					end++;
+			}
+			String token = rule.substring(i, end);
+
+			if (namePosition && ch == '$')
+				sb.append(VARIABLE_NAME).append(token.substring(1));
+			else if (namePosition || ch == '"' || ch == '$' || token.equals("-->") || isNumber(token))
+				sb.append(token);
+			else
+				sb.append('"').append(token.replace("\"", "\\\"")).append('"');
+			namePosition = false;
+			i = end;
+		}
+		return sb.toString();
+	}
+
+	private static boolean isNumber(String token) {
+		return token.matches("-?\\d+(\\.\\d+)?");
+	}
+
+	public long getLastCompileMicros() {
+		return lastMicros;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		long n = compiled.get();
+		obj.put("compiled", n);
+		obj.put("cacheHits", cacheHits.get());
+		obj.put("rejected", rejected.get());
+		obj.put("avgCompileMicros", n == 0 ? 0 : compileNanos.get() / 1000 / n);
+		obj.put("lastMicros", lastMicros);
+		synchronized (cache) {
+			obj.put("cached", cache.size());
+		}
+		return obj.toJSONString();
+	}
+
+}
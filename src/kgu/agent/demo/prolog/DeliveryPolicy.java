@@ -0,0 +1,197 @@
+package kgu.agent.demo.prolog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+import kr.ac.uos.ai.arbi.model.Expression;
+import kr.ac.uos.ai.arbi.model.GLFactory;
+import kr.ac.uos.ai.arbi.model.GeneralizedList;
+import kr.ac.uos.ai.arbi.model.parser.ParseException;
+
+// 구독 하나의 전달 정책 : NotificationDispatcher가 NotifyAction 전에 거른다
+//   (delivery (debounce 200) (maxWait 1000) (maxRate 2) (latestOnly) (minChange 0.05))
+// debounce  : 마지막 결과 뒤로 ms 동안 조용해야 보낸다
+// maxWait   : 계속 바뀌어도 모아 둔 첫 결과 뒤로 ms가 지나면 보낸다 (0 = 끝없이 debounce)
+// maxRate   : 초당 최대 전달 횟수, 그 사이에 온 결과는 모아 두었다가 다음 차례에 보낸다
+// latestOnly: 모아 둔 결과 중 (S P) 마다 마지막 것만 보낸다
+// minChange : 숫자 리터럴 O가 마지막으로 보낸 값에서 이만큼 바뀌지 않았으면 보내지 않는다
+public class DeliveryPolicy {
+
+	public static final String NAME = "delivery";
+
+	private static final Pattern NUMERIC_LITERAL = Pattern.compile("literal\\((?:type\\([^,]*,\\s*)?'?([-+0-9.eE]+)'?\\)*");
+
+	private final long debounce;
+	private final long maxWait;
+	private final long minInterval;
+	private final boolean latestOnly;
+	private final double minChange;
+
+	// 아직 보내지 않은 결과 : latestOnly면 (S P), 아니면 (S P O) 가 키
+	private final LinkedHashMap<String, String[]> pending = new LinkedHashMap<String, String[]>();
+	// (S P) -> 마지막으로 보낸 숫자 값
+	private final Map<String, Double> lastValue = new HashMap<String, Double>();
+	private long lastArrival = 0;
+	// 모아 둔 결과 중 첫 것이 온 시각
+	private long firstArrival = 0;
+	private long lastRelease = Long.MIN_VALUE / 2;
+
+	private long collapsed = 0;
+	private long suppressed = 0;
+
+	public DeliveryPolicy(long debounce, long maxWait, double maxRate, boolean latestOnly, double minChange) {
+		this.debounce = Math.max(0, debounce);
+		this.maxWait = Math.max(0, maxWait);
+		this.minInterval = maxRate > 0 ? (long) Math.ceil(1000 / maxRate) : 0;
+		this.latestOnly = latestOnly;
+		this.minChange = Math.max(0, minChange);
+	}
+
+	// Configuration 기본값
+	public static DeliveryPolicy defaults() {
+		return new DeliveryPolicy(Configuration.SUBSCRIPTION_DEBOUNCE, Configuration.SUBSCRIPTION_MAX_WAIT,
+				Configuration.SUBSCRIPTION_MAX_RATE, Configuration.SUBSCRIPTION_LATEST_ONLY,
+				Configuration.SUBSCRIPTION_MIN_CHANGE);
+	}
+
+	// (delivery ...) GL, 빠진 항목은 Configuration 기본값
+	public static DeliveryPolicy parse(String delivery) throws ParseException {
+		GeneralizedList gl = GLFactory.newGLFromGLString(delivery);
+		if (!gl.getName().equals(NAME))
+			throw new IllegalArgumentException("Missing string : \"(" + NAME + " \"");
+
+		long debounce = Configuration.SUBSCRIPTION_DEBOUNCE;
+		long maxWait = Configuration.SUBSCRIPTION_MAX_WAIT;
+		double maxRate = Configuration.SUBSCRIPTION_MAX_RATE;
+		boolean latestOnly = Configuration.SUBSCRIPTION_LATEST_ONLY;
+		double minChange = Configuration.SUBSCRIPTION_MIN_CHANGE;
+		for (int i = 0; i < gl.getExpressionsSize(); i++) {
+			Expression e = gl.getExpression(i);
+			if (!e.isGeneralizedList())
+				throw new IllegalArgumentException("unexpected " + e + " in " + NAME);
+			GeneralizedList option = e.asGeneralizedList();
+			String name = option.getName();
+			if (name.equals("latestOnly")) {
+				latestOnly = option.getExpressionsSize() == 0 || Boolean.parseBoolean(value(option));
+			} else if (name.equals("debounce")) {
+				debounce = (long) Double.parseDouble(value(option));
+			} else if (name.equals("maxWait")) {
+				maxWait = (long) Double.parseDouble(value(option));
+			} else if (name.equals("maxRate")) {
+				maxRate = Double.parseDouble(value(option));
+			} else if (name.equals("minChange")) {
+				minChange = Double.parseDouble(value(option));
+			} else {
+				throw new IllegalArgumentException("unknown " + NAME + " option : " + option);
+			}
+		}
+		return new DeliveryPolicy(debounce, maxWait, maxRate, latestOnly, minChange);
+	}
+
+	private static String value(GeneralizedList option) {
+		if (option.getExpressionsSize() != 1 || !option.getExpression(0).isValue())
+			throw new IllegalArgumentException("'" + option.getName() + "' needs one value : " + option);
+		return option.getExpression(0).asValue().stringValue();
+	}
+
+	// 모든 결과를 바로 보내는 정책
+	public boolean isPassThrough() {
+		return debounce == 0 && minInterval == 0 && minChange == 0;
+	}
+
+	// 새 결과 (S P O), 지금 보낼 결과들을 돌려준다 (없으면 빈 list, getDueAt() 에 release를 다시 부른다)
+	public synchronized List<String[]> offer(String S, String P, String O, long now) {
+		String sp = S + " " + P;
+		if (minChange > 0) {
+			Double last = lastValue.get(sp);
+			double value = numericValue(O);
+			if (last != null && !Double.isNaN(value) && Math.abs(value - last) < minChange) {
+				suppressed++;
+				return new ArrayList<String[]>(0);
+			}
+		}
+
+		String key = latestOnly ? sp : sp + " " + O;
+		if (pending.isEmpty())
+			firstArrival = now;
+		if (pending.remove(key) != null)
+			collapsed++;
+		pending.put(key, new String[] { S, P, O });
+		lastArrival = now;
+		return release(now);
+	}
+
+	// 아직 보내지 않은 결과 (S P O)가 철회되었다, 모아 둔 것에 있었으면 빼고 true
+	public synchronized boolean withdraw(String S, String P, String O) {
+		String sp = S + " " + P;
+		String[] t = pending.get(latestOnly ? sp : sp + " " + O);
+		if (t == null || !t[2].equals(O))
+			return false;
+		pending.remove(latestOnly ? sp : sp + " " + O);
+		return true;
+	}
+
+	// 때가 된 결과를 꺼낸다
+	public synchronized List<String[]> release(long now) {
+		if (pending.isEmpty() || now < getDueAt())
+			return new ArrayList<String[]>(0);
+		List<String[]> ready = new ArrayList<String[]>(pending.values());
+		pending.clear();
+		lastRelease = now;
+		if (minChange > 0) {
+			for (String[] t : ready) {
+				double value = numericValue(t[2]);
+				if (!Double.isNaN(value))
+					lastValue.put(t[0] + " " + t[1], value);
+			}
+		}
+		return ready;
+	}
+
+	// 모아 둔 결과를 보낼 수 있는 시각 (ms)
+	public synchronized long getDueAt() {
+		long quiet = lastArrival + debounce;
+		if (maxWait > 0)
+			quiet = Math.min(quiet, firstArrival + maxWait);
+		return Math.max(quiet, lastRelease + minInterval);
+	}
+
+	public synchronized boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	// literal(type(xsd:double, '0.35')), literal('3') 같은 O의 값, 숫자가 아니면 NaN
+	static double numericValue(String O) {
+		Matcher m = NUMERIC_LITERAL.matcher(O);
+		if (!m.matches())
+			return Double.NaN;
+		try {
+			return Double.parseDouble(m.group(1));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		JSONObject obj = new JSONObject();
+		obj.put("debounce", debounce);
+		obj.put("maxWait", maxWait);
+		obj.put("minInterval", minInterval);
+		obj.put("latestOnly", latestOnly);
+		obj.put("minChange", minChange);
+		obj.put("pending", pending.size());
+		obj.put("collapsed", collapsed);
+		obj.put("suppressed", suppressed);
+		return obj.toJSONString();
+	}
+
+}
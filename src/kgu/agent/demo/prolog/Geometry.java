@@ -0,0 +1,250 @@
+package kgu.agent.demo.prolog;
+
+import org.jpl7.Query;
+
+import kgu.agent.demo.Configuration;
+
+// arbi_comp_spatial.pl / predicate_isaac.pl 의 부동소수점 기하 계산을 Java로 옮긴 것
+// arbi_geometry.pl 이 jpl_call로 부르고, Prolog 원본(*_pl)과 같은 결과를 내야 한다 (test/geometryDiffTest 로 비교).
+// 연산 순서도 Prolog 식과 같게 두었다.
+public class Geometry {
+
+	private static volatile boolean enabled = false;
+
+	// Configuration.GEOMETRY_NATIVE 이면 arbi_geometry:geometry_native 를 켠다 (끄면 Prolog 원본을 쓴다)
+	public static void enable() {
+		if (!Configuration.GEOMETRY_NATIVE)
+			return;
+		try {
+			enabled = Query.hasSolution("arbi_geometry:geometry_enable");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.out.println("Geometry native " + (enabled ? "enabled" : "failed"));
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	// rotation/7 : (x0, y0)를 (xc, yc) 중심으로 degree 만큼 회전
+	public static double[] rotation(double xc, double yc, double x0, double y0, double degree) {
+		double r = (Math.PI * degree) / 180;
+		double s = Math.sin(r);
+		double c = Math.cos(r);
+		return new double[] { (x0 - xc) * c - (y0 - yc) * s + xc, (x0 - xc) * s + (y0 - yc) * c + yc };
+	}
+
+	// comp_RCCD_Hybrid/3 의 분류 부분. 조건이 맞는 방향을 Prolog의 once(...) 순서대로 모두 돌려준다
+	// (호출 쪽이 RCCD를 이미 정해 두었으면 뒤쪽 가지도 맞을 수 있으므로)
+	public static String[] rccdHybrid(double rx, double ry, double ox, double oy, double d, double rd, double rw) {
+		double[] p = rotation(rx, ry, ox, oy, -d);
+		double x1 = p[0], y1 = p[1];
+		double minRY = ry - 0.5 * rw, minRX = rx - 0.5 * rd;
+		double maxRY = ry + 0.5 * rw, maxRX = rx + 0.5 * rd;
+
+		Regions regions = new Regions();
+		regions.add(minRX <= x1 && maxRX >= x1 && maxRY >= y1 && minRY <= y1, "identical");
+
+		// 접점(contact point) 안쪽은 투영(projection), 바깥쪽은 원뿔(cone) 기준
+		double cp = m(112.5) * minRX + fragment(rx, ry, m(112.5));
+		regions.add((y1 <= cp && minRX <= x1 && maxRX >= x1 && maxRY <= y1)
+				|| (y1 > cp && frontArea(rx, ry, x1, y1)), "front");
+		cp = (maxRY - fragment(rx, ry, m(22.5))) / m(22.5);
+		regions.add((x1 <= cp && minRX <= x1 && maxRX <= x1 && maxRY >= y1 && minRY <= y1)
+				|| (x1 > cp && rightArea(rx, ry, x1, y1)), "right");
+		cp = (maxRY - fragment(rx, ry, m(157.5))) / m(157.5);
+		regions.add((x1 >= cp && minRX <= x1 && maxRX <= x1 && maxRY >= y1 && minRY <= y1)
+				|| (x1 < cp && leftArea(rx, ry, x1, y1)), "left");
+		cp = m(292.5) * maxRX + fragment(rx, ry, m(292.5));
+		regions.add((y1 >= cp && minRX <= x1 && maxRX >= x1 && minRY >= y1)
+				|| (y1 < cp && behindArea(rx, ry, x1, y1)), "behind");
+
+		regions.add(maxRX <= x1 && minRY >= y1 && behindRightArea(rx, ry, x1, y1), "behindRight");
+		regions.add(minRX >= x1 && maxRY <= y1 && frontLeftArea(rx, ry, x1, y1), "frontLeft");
+		regions.add(minRX >= x1 && minRY >= y1 && behindLeftArea(rx, ry, x1, y1), "behindLeft");
+		regions.add(maxRX <= x1 && maxRY <= y1 && frontRightArea(rx, ry, x1, y1), "frontRight");
+		return regions.toArray();
+	}
+
+	// comp_RCCD_C3/4 의 분류 부분 (원뿔 기준만)
+	public static String[] rccdCone(double rx, double ry, double ox, double oy, double d, double rd, double rw) {
+		double[] p = rotation(rx, ry, ox, oy, -d);
+		double x1 = p[0], y1 = p[1];
+		double minRY = ry - 0.5 * rw, minRX = rx - 0.5 * rd;
+		double maxRY = ry + 0.5 * rw, maxRX = rx + 0.5 * rd;
+
+		Regions regions = new Regions();
+		regions.add(minRX <= x1 && maxRX >= x1 && maxRY >= y1 && minRY <= y1, "identical");
+		regions.add(behindRightArea(rx, ry, x1, y1), "behindRight");
+		regions.add(rightArea(rx, ry, x1, y1), "right");
+		regions.add(behindArea(rx, ry, x1, y1), "behind");
+		regions.add(behindLeftArea(rx, ry, x1, y1), "behindLeft");
+		regions.add(leftArea(rx, ry, x1, y1), "left");
+		regions.add(frontRightArea(rx, ry, x1, y1), "frontRight");
+		regions.add(frontLeftArea(rx, ry, x1, y1), "frontLeft");
+		regions.add(frontArea(rx, ry, x1, y1), "front");
+		return regions.toArray();
+	}
+
+	// check_*Area/4 : (tx, ty)가 (cx, cy)에서 두 직선 사이의 원뿔 안에 있는지
+	public static boolean frontArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 112.5) >= 0 && side(cx, cy, tx, ty, 67.5) > 0;
+	}
+
+	public static boolean leftArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 157.5) < 0 && side(cx, cy, tx, ty, 202.5) >= 0;
+	}
+
+	public static boolean rightArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 22.5) < 0 && side(cx, cy, tx, ty, 337.5) > 0;
+	}
+
+	public static boolean behindArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 247.5) < 0 && side(cx, cy, tx, ty, 292.5) < 0;
+	}
+
+	public static boolean frontRightArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 22.5) > 0 && side(cx, cy, tx, ty, 67.5) < 0;
+	}
+
+	public static boolean frontLeftArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 112.5) < 0 && side(cx, cy, tx, ty, 157.5) > 0;
+	}
+
+	public static boolean behindLeftArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 202.5) < 0 && side(cx, cy, tx, ty, 247.5) > 0;
+	}
+
+	public static boolean behindRightArea(double cx, double cy, double tx, double ty) {
+		return side(cx, cy, tx, ty, 292.5) > 0 && side(cx, cy, tx, ty, 337.5) < 0;
+	}
+
+	// vertex/3 : pose = {x, y, z, a, b, c}, size = {sx, sy, sz} -> 8개 꼭짓점 {x1, y1, z1, ..., x8, y8, z8}
+	public static double[] vertex(double[] pose, double[] size) {
+		double[][] o = orientation(pose[3], pose[4], pose[5]);
+		double hx = size[0] / 2, hy = size[1] / 2, hz = size[2] / 2;
+		// P1 .. P8 순서 (x, y, z 부호)
+		double[][] corners = {
+				{ -hx, -hy, -hz }, { -hx, hy, -hz }, { hx, hy, -hz }, { hx, -hy, -hz },
+				{ -hx, -hy, hz }, { -hx, hy, hz }, { hx, hy, hz }, { hx, -hy, hz } };
+
+		double[] vertice = new double[24];
+		for (int i = 0; i < 8; i++) {
+			for (int r = 0; r < 3; r++)
+				vertice[i * 3 + r] = dot(o[r], corners[i]) + pose[r];
+		}
+		return vertice;
+	}
+
+	// intersects/3 의 부피 비율 계산. space, object = {꼭짓점0 x, y, z, 꼭짓점6 x, y, z}
+	// Prolog에서 실패하는 경우는 빈 배열
+	public static double[] intersectRatio(double[] space, double[] object) {
+		double x1 = Math.min(space[0], space[3]), x2 = Math.max(space[0], space[3]);
+		double y1 = Math.min(space[1], space[4]), y2 = Math.max(space[1], space[4]);
+		double z1 = Math.min(space[2], space[5]), z2 = Math.max(space[2], space[5]);
+		double x3 = Math.min(object[0], object[3]), x4 = Math.max(object[0], object[3]);
+		double y3 = Math.min(object[1], object[4]), y4 = Math.max(object[1], object[4]);
+		double z3 = Math.min(object[2], object[5]), z4 = Math.max(object[2], object[5]);
+
+		double lengthX = overlap(x1, x2, x3, x4, 0, 0.015);
+		double lengthY = overlap(y1, y2, y3, y4, 0, 0.015);
+		double lengthZ = overlap(z1, z2, z3, z4, 0.01, 0);
+		if (Double.isNaN(lengthX) || Double.isNaN(lengthY) || Double.isNaN(lengthZ))
+			return new double[0];
+
+		double spaceVolume = (x2 - x1 + 0.015) * (y2 - y1 + 0.015) * (z2 - z1);
+		if (spaceVolume == 0)
+			throw new ArithmeticException("intersects: zero space volume");
+		return new double[] { Math.abs(lengthX * lengthY * lengthZ / spaceVolume) };
+	}
+
+	// ray casting (경계 위의 점은 어느 쪽으로도 판정될 수 있다)
+	public static boolean inPolygon(double[] polygon, double x, double y) {
+		boolean inside = false;
+		int n = polygon.length / 2;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			double xi = polygon[2 * i], yi = polygon[2 * i + 1];
+			double xj = polygon[2 * j], yj = polygon[2 * j + 1];
+			if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+				inside = !inside;
+		}
+		return inside;
+	}
+
+	// getM/2
+	private static double m(double degree) {
+		return Math.tan(Math.PI * degree / 180);
+	}
+
+	// getFragment/4
+	private static double fragment(double xc, double yc, double m) {
+		return yc - (m * xc);
+	}
+
+	// TY - M*TX - F
+	private static double side(double cx, double cy, double tx, double ty, double degree) {
+		double m = m(degree);
+		return ty - m * tx - fragment(cx, cy, m);
+	}
+
+	// intersects/3 의 once((...);(...)) 여섯 가지 경우. 어느 것도 아니면 NaN
+	// gap은 첫 경우(떨어져 있음)의 여유, tol은 나머지 경우의 허용 오차
+	private static double overlap(double a1, double a2, double b1, double b2, double gap, double tol) {
+		if (a2 - gap < b1)
+			return 0;
+		if (a1 - tol < b1 && b1 < a2 + tol && a2 < b2 + tol)
+			return a2 - b1;
+		if (a1 - tol < b1 && b1 < a2 + tol && b2 < a2 + tol)
+			return b2 - b1;
+		if (b1 - tol < a1 && a2 < b2 + tol)
+			return a2 - a1;
+		if (b1 - tol < a1 && a1 < b2 + tol && b2 < a2 + tol)
+			return b2 - a1;
+		if (b2 - tol < a1)
+			return 0;
+		return Double.NaN;
+	}
+
+	// orientation/2 : Rz * (Ry * Rx)
+	private static double[][] orientation(double a, double b, double c) {
+		double sinA = Math.sin(a), cosA = Math.cos(a);
+		double sinB = Math.sin(b), cosB = Math.cos(b);
+		double sinC = Math.sin(c), cosC = Math.cos(c);
+		double[][] rx = { { 1, 0, 0 }, { 0, cosA, -sinA }, { 0, sinA, cosA } };
+		double[][] ry = { { cosB, 0, sinB }, { 0, 1, 0 }, { -sinB, 0, cosB } };
+		double[][] rz = { { cosC, -sinC, 0 }, { sinC, cosC, 0 }, { 0, 0, 1 } };
+		return multiply(rz, multiply(ry, rx));
+	}
+
+	private static double[][] multiply(double[][] x, double[][] y) {
+		double[][] m = new double[3][3];
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++)
+				m[i][j] = (x[i][0] * y[0][j] + x[i][1] * y[1][j]) + x[i][2] * y[2][j];
+		}
+		return m;
+	}
+
+	// matrix.pl 의 dot_product/3 과 같은 순서로 더한다
+	private static double dot(double[] row, double[] v) {
+		return (row[0] * v[0] + row[1] * v[1]) + row[2] * v[2];
+	}
+
+	private static class Regions {
+		private final String[] names = new String[9];
+		private int size = 0;
+
+		void add(boolean matches, String name) {
+			if (matches)
+				names[size++] = name;
+		}
+
+		String[] toArray() {
+			String[] result = new String[size];
+			System.arraycopy(names, 0, result, 0, size);
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package kgu.agent.demo.prolog;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+
+import kgu.agent.demo.Configuration;
+
+// arbi_view.pl 의 materialized view 연결부
+// 질의 쪽에서는 view로 선언된 goal을 mv_lookup/1 테이블 조회로 바꾸고,
+// 인식 쪽(LatestPerceptionAction)에서는 새 위치/방향이 들어올 때 해당 로봇의 행만 갱신한다.
+// 답은 predicate_isaac.pl 과 같아야 한다 (test.viewEquivalenceTest)
+public class MaterializedViews {
+
+	private static final String ROBOT_NS = "http://www.arbi.com/ontologies/arbi.owl#";
+
+	private static volatile Set<String> views = Collections.emptySet();
+
+	// Configuration.MATERIALIZED_VIEWS 중 arbi_view.pl 에 선언(mv_declared/1)된 것만 켠다
+	public static void loadFromProlog() {
+		Set<String> configured = new HashSet<String>();
+		for (String name : Configuration.MATERIALIZED_VIEWS.split(",")) {
+			if (!name.trim().isEmpty())
+				configured.add(name.trim());
+		}
+
+		Set<String> enabled = new HashSet<String>();
+		try {
+			Query q = new Query("arbi_view:mv_declared(Name/_)");
+			while (q.hasMoreSolutions()) {
+				Map<String, Term> s3 = q.nextSolution();
+				String name = s3.get("Name").name();
+				if (configured.contains(name))
+					enabled.add(name);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		views = enabled;
+		System.out.println("MaterializedViews : " + enabled);
+	}
+
+	public static boolean isEnabled() {
+		return !views.isEmpty();
+	}
+
+	public static boolean isView(String predicate) {
+		return views.contains(predicate);
+	}
+
+	// predicate(args) -> arbi_view:mv_lookup(predicate(args))
+	public static String lookup(String goal) {
+		return "arbi_view:mv_lookup(" + goal + ")";
+	}
+
+	// 로봇의 현재 perception 이 바뀐 뒤에 호출한다 (위치든 방향이든)
+	public static void update(String robotID) {
+		if (isEnabled())
+			Query.hasSolution("arbi_view:mv_update('" + ROBOT_NS + robotID + "')");
+	}
+
+}
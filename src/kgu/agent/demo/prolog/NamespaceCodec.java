@@ -0,0 +1,174 @@
+package kgu.agent.demo.prolog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+
+// prefix <-> namespace IRI 변환 (arbi:foo <-> http://www.arbi.com/ontologies/arbi.owl#foo)
+// 접두어와 IRI를 각각 trie로 만들어 두고 문자열을 한 번만 훑으면서 변환한다.
+// 바꿀 것이 없으면 입력 문자열을 그대로 돌려주므로 대부분의 호출은 할당이 없다.
+// 테이블은 Prolog가 쓰는 rdf_register_ns 테이블(rdf_current_prefix/2)에서 다시 읽을 수 있다.
+public class NamespaceCodec {
+
+	private static final Map<String, String> DEFAULT_NAMESPACES = new LinkedHashMap<String, String>();
+
+	static {
+		DEFAULT_NAMESPACES.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+		DEFAULT_NAMESPACES.put("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
+		DEFAULT_NAMESPACES.put("owl", "http://www.w3.org/2002/07/owl#");
+		DEFAULT_NAMESPACES.put("xsd", "http://www.w3.org/2001/XMLSchema#");
+		DEFAULT_NAMESPACES.put("dc", "http://purl.org/dc/elements/1.1/");
+		DEFAULT_NAMESPACES.put("knowrob", "http://knowrob.org/kb/knowrob.owl#");
+		DEFAULT_NAMESPACES.put("arbi", "http://www.arbi.com/ontologies/arbi.owl#");
+		DEFAULT_NAMESPACES.put("robot", "http://knowrob.org/kb/jaco.owl#");
+		DEFAULT_NAMESPACES.put("comp_spatial", "http://knowrob.org/kb/comp_spatial.owl#");
+		DEFAULT_NAMESPACES.put("comp_temporal", "http://knowrob.org/kb/comp_temporal.owl#");
+		DEFAULT_NAMESPACES.put("computable", "http://knowrob.org/kb/computable.owl#");
+		DEFAULT_NAMESPACES.put("srdl2comp", "http://knowrob.org/kb/srdl2-comp.owl#");
+		DEFAULT_NAMESPACES.put("test_sp", "http://knowrob.org/kb/test_comp_spatial.owl#");
+	}
+
+	private static volatile NamespaceCodec instance = new NamespaceCodec(DEFAULT_NAMESPACES);
+
+	public static NamespaceCodec getInstance() {
+		return instance;
+	}
+
+	// Prolog에 등록된 namespace로 테이블을 다시 만든다 (기본 테이블에만 있는 접두어는 유지)
+	public static NamespaceCodec loadFromProlog() {
+		Map<String, String> namespaces = new LinkedHashMap<String, String>(DEFAULT_NAMESPACES);
+		try {
+			Query q = new Query("rdf_current_prefix(Prefix, IRI)");
+			while (q.hasMoreSolutions()) {
+				Map<String, Term> s3 = q.nextSolution();
+				namespaces.put(s3.get("Prefix").name(), s3.get("IRI").name());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		instance = new NamespaceCodec(namespaces);
+		System.out.println("NamespaceCodec loaded " + namespaces.size() + " namespaces");
+		return instance;
+	}
+
+	private final Map<String, String> namespaces;
+	private final Node prefixTrie = new Node();
+	private final Node iriTrie = new Node();
+
+	public NamespaceCodec(Map<String, String> namespaces) {
+		this.namespaces = new LinkedHashMap<String, String>(namespaces);
+		for (Map.Entry<String, String> ns : this.namespaces.entrySet()) {
+			prefixTrie.add(ns.getKey() + ":", ns.getValue());
+			iriTrie.add(ns.getValue(), ns.getKey() + ":");
+		}
+	}
+
+	public Map<String, String> getNamespaces() {
+		return namespaces;
+	}
+
+	// arbi:foo -> http://www.arbi.com/ontologies/arbi.owl#foo
+	// 접두어는 단어 경계에서 시작할 때만 바꾼다 (xrdf:a 의 rdf: 는 바꾸지 않음)
+	public String expand(String s) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int length = s.length();
+
+		for (int i = 0; i < length; i++) {
+			if (i > 0 && isNameChar(s.charAt(i - 1)))
+				continue;
+			Node match = prefixTrie.longestMatch(s, i);
+			if (match == null)
+				continue;
+
+			if (sb == null)
+				sb = new StringBuilder(length + 64);
+			sb.append(s, copied, i).append(match.replacement);
+			i += match.depth - 1;
+			copied = i + 1;
+		}
+
+		if (sb == null)
+			return s;
+		return sb.append(s, copied, length).toString();
+	}
+
+	// http://www.arbi.com/ontologies/arbi.owl#foo -> arbi:foo
+	public String compact(String s) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int length = s.length();
+
+		for (int i = 0; i < length; i++) {
+			Node match = iriTrie.longestMatch(s, i);
+			if (match == null)
+				continue;
+
+			if (sb == null)
+				sb = new StringBuilder(length);
+			sb.append(s, copied, i).append(match.replacement);
+			i += match.depth - 1;
+			copied = i + 1;
+		}
+
+		if (sb == null)
+			return s;
+		return sb.append(s, copied, length).toString();
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+	}
+
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private String replacement;
+		private int depth;
+
+		void add(String key, String replacement) {
+			Node node = this;
+			for (int i = 0; i < key.length(); i++)
+				node = node.child(key.charAt(i), true);
+			node.replacement = replacement;
+		}
+
+		Node child(char c, boolean create) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c)
+					return children[i];
+			}
+			if (!create)
+				return null;
+
+			Node node = new Node();
+			node.depth = depth + 1;
+			char[] k = new char[keys.length + 1];
+			Node[] n = new Node[children.length + 1];
+			System.arraycopy(keys, 0, k, 0, keys.length);
+			System.arraycopy(children, 0, n, 0, children.length);
+			k[keys.length] = c;
+			n[children.length] = node;
+			keys = k;
+			children = n;
+			return node;
+		}
+
+		// s의 start 위치에서 시작하는 가장 긴 키의 끝 노드
+		Node longestMatch(String s, int start) {
+			Node node = this;
+			Node match = null;
+			for (int i = start; i < s.length(); i++) {
+				node = node.child(s.charAt(i), false);
+				if (node == null)
+					break;
+				if (node.replacement != null)
+					match = node;
+			}
+			return match;
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package kgu.agent.demo.prolog;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+// JPL attaches a Prolog engine to the Java thread that opens a Query and the
+// solutions of that query must be fetched on the same thread. Every engine of
+// this pool is therefore a dedicated worker thread, so queries submitted here
+// run in parallel on separate SWI-Prolog engines instead of queueing on the
+// caller's (default) engine. Waiting tasks are ordered and admitted by a
+// QueryScheduler according to the priority class of their sender.
+public class PrologEnginePool {
+
+	// JPL creates at most this many pool engines (JPL_MAX_POOL_ENGINES in jpl.c)
+	public static final int MAX_ENGINES = 10;
+
+	private final QueryScheduler<EngineTask<?>> queue = new QueryScheduler<EngineTask<?>>();
+	private final Engine[] engines;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong shed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong totalRunNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public PrologEnginePool(int size) {
+		if (size < 1)
+			size = 1;
+		if (size > MAX_ENGINES)
+			size = MAX_ENGINES;
+
+		engines = new Engine[size];
+		for (int i = 0; i < size; i++) {
+			engines[i] = new Engine(i);
+			engines[i].start();
+		}
+		System.out.println("PrologEnginePool started with " + size + " engines");
+	}
+
+	public int getSize() {
+		return engines.length;
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		return submit(null, task);
+	}
+
+	// A shed task completes with a RejectedExecutionException.
+	public <T> Future<T> submit(String sender, Callable<T> task) {
+		EngineTask<T> engineTask = new EngineTask<T>(task, queue.classify(sender));
+		submitted.incrementAndGet();
+		if (!queue.offer(engineTask.priorityClass, engineTask, getExpectedWaitMillis())) {
+			shed.incrementAndGet();
+			engineTask.reject();
+		}
+		return engineTask;
+	}
+
+	public String getPriorityClass(String sender) {
+		return queue.classify(sender);
+	}
+
+	public <T> T execute(Callable<T> task) {
+		return execute(null, task);
+	}
+
+	// Runs the task on a pool engine and waits for its result.
+	// A task that is already running on a pool engine is executed in place,
+	// otherwise a nested query would wait for an engine held by its own caller.
+	// Throws RejectedExecutionException if the scheduler shed the task, and
+	// rethrows what the task threw (checked exceptions wrapped in a
+	// RuntimeException whose cause is the original) so the caller can reply
+	// with an error instead of a null result.
+	public <T> T execute(String sender, Callable<T> task) {
+		try {
+			if (Thread.currentThread() instanceof Engine)
+				return task.call();
+			return submit(sender, task).get();
+		} catch (ExecutionException e) {
+			throw unchecked(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for a Prolog engine", e);
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+	}
+
+	private static RuntimeException unchecked(Throwable t) {
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		return new RuntimeException(t);
+	}
+
+	public void shutdown() {
+		for (Engine engine : engines)
+			engine.interrupt();
+	}
+
+	public int getQueueLength() {
+		return queue.size();
+	}
+
+	public int getBusyEngines() {
+		int busy = 0;
+		for (Engine engine : engines) {
+			if (engine.busy)
+				busy++;
+		}
+		return busy;
+	}
+
+	// queue length times the average run time, spread over the engines
+	public double getExpectedWaitMillis() {
+		return getQueueLength() * getAverageRunMillis() / engines.length;
+	}
+
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getShedCount() {
+		return shed.get();
+	}
+
+	public double getAverageWaitMillis() {
+		long done = completed.get() + failed.get();
+		return done == 0 ? 0 : totalWaitNanos.get() / 1e6 / done;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1e6;
+	}
+
+	public double getAverageRunMillis() {
+		long done = completed.get() + failed.get();
+		return done == 0 ? 0 : totalRunNanos.get() / 1e6 / done;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		JSONArray engineList = new JSONArray();
+
+		for (Engine engine : engines) {
+			JSONObject e = new JSONObject();
+			e.put("name", engine.getName());
+			e.put("busy", engine.busy);
+			e.put("executed", engine.executed);
+			engineList.add(e);
+		}
+
+		obj.put("size", engines.length);
+		obj.put("queued", getQueueLength());
+		obj.put("busy", getBusyEngines());
+		obj.put("submitted", submitted.get());
+		obj.put("completed", completed.get());
+		obj.put("failed", failed.get());
+		obj.put("shed", shed.get());
+		obj.put("avgWaitMillis", getAverageWaitMillis());
+		obj.put("maxWaitMillis", getMaxWaitMillis());
+		obj.put("avgRunMillis", getAverageRunMillis());
+		obj.put("classes", queue.toJSON());
+		obj.put("engines", engineList);
+
+		return obj.toJSONString();
+	}
+
+	private class EngineTask<T> extends FutureTask<T> {
+		private final long enqueued = System.nanoTime();
+		private final String priorityClass;
+
+		EngineTask(Callable<T> task, String priorityClass) {
+			super(task);
+			this.priorityClass = priorityClass;
+		}
+
+		void reject() {
+			setException(new RejectedExecutionException(
+					"query shed: " + priorityClass + " queue is over the latency target"));
+		}
+	}
+
+	private class Engine extends Thread {
+		volatile boolean busy = false;
+		volatile long executed = 0;
+
+		Engine(int index) {
+			super("PrologEngine-" + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				EngineTask<?> task;
+				try {
+					task = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				long start = System.nanoTime();
+				long wait = start - task.enqueued;
+				totalWaitNanos.addAndGet(wait);
+				queue.recordWait(task.priorityClass, wait);
+				long max = maxWaitNanos.get();
+				while (wait > max && !maxWaitNanos.compareAndSet(max, wait))
+					max = maxWaitNanos.get();
+
+				busy = true;
+				task.run();
+				busy = false;
+				executed++;
+				totalRunNanos.addAndGet(System.nanoTime() - start);
+
+				try {
+					task.get();
+					completed.incrementAndGet();
+				} catch (Exception e) {
+					failed.incrementAndGet();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package kgu.agent.demo.prolog;
+
+import java.util.ArrayList;
+
+import org.jpl7.Query;
+
+import kgu.agent.demo.Configuration;
+
+// arbi_tabling.pl 연결부 : Configuration.TABLED_PREDICATES 에 적힌 predicate만 tabling 한다 (기본은 꺼져 있음)
+public class PrologTabling {
+
+	private static volatile boolean enabled = false;
+
+	public static void enable() {
+		ArrayList<String> predicates = new ArrayList<String>();
+		for (String spec : Configuration.TABLED_PREDICATES.split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty())
+				continue;
+			// module이 없으면 predicate_isaac.pl (module predicate)
+			predicates.add(spec.contains(":") ? spec : "predicate:" + spec);
+		}
+		if (predicates.isEmpty())
+			return;
+
+		ArrayList<String> graphs = new ArrayList<String>();
+		for (String graph : Configuration.TABLING_VOLATILE_GRAPHS.split(",")) {
+			if (!graph.trim().isEmpty())
+				graphs.add("'" + graph.trim() + "'");
+		}
+
+		String goal = "arbi_tabling:tabling_enable([" + String.join(", ", predicates) + "], ["
+				+ String.join(", ", graphs) + "])";
+		try {
+			enabled = Query.hasSolution(goal);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.out.println("PrologTabling " + (enabled ? "enabled" : "failed") + " : " + predicates);
+	}
+
+	// RDF가 바뀐 뒤의 오래된 table은 tabling 된 predicate 를 부를 때 arbi_tabling.pl 이 버린다 (어느 thread에서 부르든)
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+}
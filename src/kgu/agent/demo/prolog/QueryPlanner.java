@@ -0,0 +1,131 @@
+package kgu.agent.demo.prolog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+
+// (context (p1 ...) (p2 ...) ...) 의 goal 실행 순서를 정한다.
+// 다시 배치하는 것은 rdf/3, rdf_has/3 goal뿐이다. 그 밖의 goal (computable, predicate_isaac 규칙, 비교 등)은
+// 입력 인자가 묶여 있어야 할 수 있으므로 쓰여진 자리에 그대로 두고, 그 사이에 연달아 있는 rdf goal들만
+// 이미 묶인 변수를 기준으로 rdf_estimate_complexity/4가 가장 작은 것부터 하나씩 고른다 (greedy).
+public class QueryPlanner {
+
+	private static final Set<String> RDF_GOALS = new HashSet<String>(Arrays.asList("rdf", "rdf_has"));
+
+	private static final QueryPlanner instance = new QueryPlanner();
+
+	public static QueryPlanner getInstance() {
+		return instance;
+	}
+
+	public static class Goal {
+		final String predicate;
+		final String text;
+		final String[] args;
+		final boolean[] variable;
+
+		public Goal(String predicate, String text, String[] args, boolean[] variable) {
+			this.predicate = predicate;
+			this.text = text;
+			this.args = args;
+			this.variable = variable;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	// goal들을 실행할 순서대로 돌려준다 (추정 비용이 같으면 원래 순서 유지)
+	public List<Goal> order(List<Goal> goals) {
+		if (goals.size() < 2)
+			return goals;
+
+		List<Goal> ordered = new ArrayList<Goal>(goals.size());
+		Set<String> bound = new HashSet<String>();
+		List<Goal> run = new ArrayList<Goal>();
+
+		for (Goal goal : goals) {
+			if (isRdf(goal)) {
+				run.add(goal);
+				continue;
+			}
+			orderRun(run, bound, ordered);
+			add(goal, bound, ordered);
+		}
+		orderRun(run, bound, ordered);
+		return ordered;
+	}
+
+	// 연달아 있는 rdf goal들
+	private void orderRun(List<Goal> run, Set<String> bound, List<Goal> ordered) {
+		while (!run.isEmpty()) {
+			Goal best = run.get(0);
+			double bestCost = estimate(best, bound);
+			for (int i = 1; i < run.size(); i++) {
+				double cost = estimate(run.get(i), bound);
+				if (cost < bestCost) {
+					best = run.get(i);
+					bestCost = cost;
+				}
+			}
+			run.remove(best);
+			add(best, bound, ordered);
+		}
+	}
+
+	private static void add(Goal goal, Set<String> bound, List<Goal> ordered) {
+		ordered.add(goal);
+		for (int i = 0; i < goal.args.length; i++) {
+			if (goal.variable[i])
+				bound.add(goal.args[i]);
+		}
+	}
+
+	private static boolean isRdf(Goal goal) {
+		return RDF_GOALS.contains(goal.predicate) && goal.args.length == 3;
+	}
+
+	// 추정을 못 하면 묶이지 않은 인자 수로 센다
+	double estimate(Goal goal, Set<String> bound) {
+		double c = rdfComplexity(goal, bound);
+		if (c >= 0)
+			return c;
+		int unbound = 0;
+		for (int i = 0; i < goal.args.length; i++) {
+			if (goal.variable[i] && !bound.contains(goal.args[i]))
+				unbound++;
+		}
+		return unbound;
+	}
+
+	private double rdfComplexity(Goal goal, Set<String> bound) {
+		StringBuilder q = new StringBuilder("rdf_estimate_complexity(");
+		for (int i = 0; i < 3; i++) {
+			// 묶인 변수의 값은 아직 모르므로 구체적인 값 대신 predicate 통계만 쓰도록 _ 로 둔다
+			q.append(goal.variable[i] ? "_" : goal.args[i]).append(", ");
+		}
+		q.append("C)");
+		try {
+			Map<String, Term> s3 = Query.oneSolution(q.toString());
+			if (s3 == null)
+				return -1;
+			double c = s3.get("C").doubleValue();
+			// 이미 묶인 변수가 있으면 그만큼 줄어든다고 본다
+			for (int i = 0; i < 3; i++) {
+				if (goal.variable[i] && bound.contains(goal.args[i]))
+					c = Math.sqrt(c);
+			}
+			return c;
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+}
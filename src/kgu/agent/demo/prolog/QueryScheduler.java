@@ -0,0 +1,222 @@
+package kgu.agent.demo.prolog;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+
+// Admission and ordering of the tasks waiting for a PrologEnginePool engine.
+// Every sender maps to a priority class. Waiting tasks are served by
+// self-clocked weighted fair queuing: a task gets the finish tag
+// max(virtual time, last tag of its class) + 1 / weight and the smallest tag
+// runs first, so a backlogged class receives engine time in proportion to its
+// weight and a light class (planning) is never stuck behind a heavy one.
+// Tasks of sheddable classes are rejected on arrival while the expected wait
+// is above the latency target.
+public class QueryScheduler<T> {
+
+	private final Map<String, PriorityClass> classes = new LinkedHashMap<String, PriorityClass>();
+	// sender substring -> class, in configuration order; "*" matches every sender
+	private final Map<String, PriorityClass> senders = new LinkedHashMap<String, PriorityClass>();
+	private final PriorityClass defaultClass;
+	private final long latencyTargetMillis;
+
+	private final PriorityQueue<Entry<T>> queue = new PriorityQueue<Entry<T>>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private double virtualTime = 0;
+	private long sequence = 0;
+
+	public QueryScheduler() {
+		this(Configuration.QUERY_PRIORITY_WEIGHTS, Configuration.QUERY_PRIORITY_SENDERS,
+				Configuration.QUERY_SHEDDABLE, Configuration.QUERY_LATENCY_TARGET);
+	}
+
+	public QueryScheduler(String weights, String senderClasses, String sheddable, long latencyTargetMillis) {
+		for (String spec : weights.split(",")) {
+			String[] kv = spec.split("=");
+			if (kv.length == 2)
+				classes.put(kv[0].trim(), new PriorityClass(kv[0].trim(), Double.parseDouble(kv[1].trim())));
+		}
+		for (String name : sheddable.split(",")) {
+			PriorityClass c = classes.get(name.trim());
+			if (c != null)
+				c.sheddable = true;
+		}
+
+		PriorityClass fallback = null;
+		for (String spec : senderClasses.split(",")) {
+			String[] kv = spec.split("=");
+			if (kv.length != 2 || !classes.containsKey(kv[1].trim()))
+				continue;
+			if (kv[0].trim().equals("*"))
+				fallback = classes.get(kv[1].trim());
+			else
+				senders.put(kv[0].trim(), classes.get(kv[1].trim()));
+		}
+		if (fallback == null) {
+			if (classes.isEmpty())
+				classes.put("default", new PriorityClass("default", 1));
+			// the lightest class
+			for (PriorityClass c : classes.values()) {
+				if (fallback == null || c.weight < fallback.weight)
+					fallback = c;
+			}
+		}
+		defaultClass = fallback;
+		this.latencyTargetMillis = latencyTargetMillis;
+	}
+
+	public String classify(String sender) {
+		if (sender != null) {
+			for (Map.Entry<String, PriorityClass> e : senders.entrySet()) {
+				if (sender.contains(e.getKey()))
+					return e.getValue().name;
+			}
+		}
+		return defaultClass.name;
+	}
+
+	// false if the task was shed
+	public boolean offer(String className, T task, double expectedWaitMillis) {
+		PriorityClass c = classes.containsKey(className) ? classes.get(className) : defaultClass;
+		if (c.sheddable && latencyTargetMillis > 0 && expectedWaitMillis > latencyTargetMillis) {
+			c.shed.incrementAndGet();
+			return false;
+		}
+
+		lock.lock();
+		try {
+			double finish = Math.max(virtualTime, c.lastFinish) + 1.0 / c.weight;
+			c.lastFinish = finish;
+			c.queued++;
+			queue.add(new Entry<T>(task, c, finish, sequence++));
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	public T take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (queue.isEmpty())
+				notEmpty.await();
+			Entry<T> e = queue.poll();
+			virtualTime = e.finish;
+			e.priorityClass.queued--;
+			e.priorityClass.admitted.incrementAndGet();
+			return e.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// queue wait of a dispatched task, for the per-class latency percentiles
+	public void recordWait(String className, long waitNanos) {
+		PriorityClass c = classes.containsKey(className) ? classes.get(className) : defaultClass;
+		c.record(waitNanos);
+	}
+
+	public JSONObject toJSON() {
+		JSONObject obj = new JSONObject();
+		lock.lock();
+		try {
+			for (PriorityClass c : classes.values()) {
+				JSONObject o = new JSONObject();
+				o.put("weight", c.weight);
+				o.put("sheddable", c.sheddable);
+				o.put("queued", c.queued);
+				o.put("admitted", c.admitted.get());
+				o.put("shed", c.shed.get());
+				o.put("p50WaitMillis", c.percentile(0.50));
+				o.put("p99WaitMillis", c.percentile(0.99));
+				obj.put(c.name, o);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return obj;
+	}
+
+	@Override
+	public String toString() {
+		return toJSON().toJSONString();
+	}
+
+	private static class PriorityClass {
+		// recent waits kept for the percentiles
+		private static final int WINDOW = 1024;
+
+		final String name;
+		final double weight;
+		boolean sheddable = false;
+		double lastFinish = 0;
+		int queued = 0;
+		final AtomicLong admitted = new AtomicLong();
+		final AtomicLong shed = new AtomicLong();
+
+		private final long[] waits = new long[WINDOW];
+		private int next = 0;
+		private int recorded = 0;
+
+		PriorityClass(String name, double weight) {
+			this.name = name;
+			this.weight = weight > 0 ? weight : 1;
+		}
+
+		synchronized void record(long waitNanos) {
+			waits[next] = waitNanos;
+			next = (next + 1) % WINDOW;
+			if (recorded < WINDOW)
+				recorded++;
+		}
+
+		synchronized double percentile(double p) {
+			int n = recorded;
+			if (n == 0)
+				return 0;
+			long[] sorted = Arrays.copyOf(waits, n);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.min(n - 1, Math.ceil(p * n) - 1)] / 1e6;
+		}
+	}
+
+	private static class Entry<T> implements Comparable<Entry<T>> {
+		final T task;
+		final PriorityClass priorityClass;
+		final double finish;
+		final long sequence;
+
+		Entry(T task, PriorityClass priorityClass, double finish, long sequence) {
+			this.task = task;
+			this.priorityClass = priorityClass;
+			this.finish = finish;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry<T> o) {
+			int c = Double.compare(finish, o.finish);
+			return c != 0 ? c : Long.compare(sequence, o.sequence);
+		}
+	}
+
+}
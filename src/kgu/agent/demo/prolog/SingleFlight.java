@@ -0,0 +1,107 @@
+package kgu.agent.demo.prolog;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+
+// In-flight coalescing of identical calls. The first caller of a key runs the
+// call; callers that arrive with the same key while it is still running wait
+// for it and get the same result instead of running it again. Nothing is
+// cached: once the call returns, the next caller of the key runs it anew.
+public class SingleFlight<V> {
+
+	private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+	// run time of the shared calls, i.e. the work the followers did not repeat
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	// a null key runs the call without coalescing
+	public V execute(String key, Callable<V> call) throws Exception {
+		if (key == null)
+			return call.call();
+
+		Flight flight = new Flight(call);
+		Flight leader = inFlight.putIfAbsent(key, flight);
+		if (leader != null) {
+			shared.incrementAndGet();
+			V result = await(leader);
+			savedNanos.addAndGet(leader.runNanos);
+			return result;
+		}
+
+		executed.incrementAndGet();
+		try {
+			flight.run();
+		} finally {
+			inFlight.remove(key, flight);
+		}
+		return await(flight);
+	}
+
+	private V await(Flight flight) throws Exception {
+		try {
+			return flight.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	public long getExecutedCount() {
+		return executed.get();
+	}
+
+	public long getSharedCount() {
+		return shared.get();
+	}
+
+	public double getSavedMillis() {
+		return savedNanos.get() / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		obj.put("inFlight", inFlight.size());
+		obj.put("executed", executed.get());
+		obj.put("shared", shared.get());
+		obj.put("savedMillis", getSavedMillis());
+		return obj.toJSONString();
+	}
+
+	private class Flight extends FutureTask<V> {
+		private long start;
+		// set before the result is published, so followers see it after get()
+		volatile long runNanos = 0;
+
+		Flight(Callable<V> call) {
+			super(call);
+		}
+
+		@Override
+		public void run() {
+			start = System.nanoTime();
+			super.run();
+		}
+
+		@Override
+		protected void set(V v) {
+			runNanos = System.nanoTime() - start;
+			super.set(v);
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			runNanos = System.nanoTime() - start;
+			super.setException(t);
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+package kgu.agent.demo.prolog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+
+// 로봇/물체의 현재 위치를 담는 균일 격자(uniform grid) 색인
+// 시작할 때 loadFromProlog()가 semantic map과 마지막 인식의 물체 위치를 넣고, LatestPerceptionAction이 로봇의 새 위치를 넣고, arbi_spatial_index.pl 이 jpl_call로
+// radius / k-nearest / in-polygon 질의를 한다. 질의는 주변 셀만 보므로 결과 수(k)에 비례한다.
+// nearBy, near/far, check_*Area 는 이 색인을 쓰지 않는다 (arbi_spatial_index.pl 참고). 검사는 test.spatialIndexTest
+public class SpatialIndex {
+
+	private static final SpatialIndex instance = new SpatialIndex(Configuration.SPATIAL_CELL_SIZE);
+
+	public static SpatialIndex getInstance() {
+		return instance;
+	}
+
+	private final double cellSize;
+	private final Map<String, double[]> positions = new HashMap<String, double[]>();
+	private final Map<Long, Set<String>> cells = new HashMap<Long, Set<String>>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// 지금까지 쓰인 셀 범위 (k-nearest 탐색을 어디까지 넓힐지 정할 때 쓴다)
+	private int minCX = Integer.MAX_VALUE, maxCX = Integer.MIN_VALUE;
+	private int minCY = Integer.MAX_VALUE, maxCY = Integer.MIN_VALUE;
+
+	public SpatialIndex(double cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	// 물체 위치 : semantic map의 위치(semanticPose), 그 뒤 마지막 인식 위치(locatedAt)가 있으면 그것으로 덮는다
+	public static int loadFromProlog() {
+		int n = 0;
+		String[] goals = { "predicate:semanticPose(Id, [X, Y|_])", "predicate:locatedAt(Id, [X, Y|_])" };
+		for (String goal : goals) {
+			try {
+				Query q = new Query(goal);
+				while (q.hasMoreSolutions()) {
+					Map<String, Term> s3 = q.nextSolution();
+					Term x = s3.get("X");
+					Term y = s3.get("Y");
+					if (!(x.isInteger() || x.isFloat()) || !(y.isInteger() || y.isFloat()))
+						continue;
+					instance.update(s3.get("Id").name(), x.doubleValue(), y.doubleValue());
+					n++;
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		System.out.println("SpatialIndex : " + instance.size() + " positions");
+		return n;
+	}
+
+	public void update(String id, double x, double y) {
+		lock.writeLock().lock();
+		try {
+			double[] old = positions.get(id);
+			if (old != null) {
+				long oldCell = cell(old[0], old[1]);
+				if (oldCell == cell(x, y)) {
+					old[0] = x;
+					old[1] = y;
+					return;
+				}
+				removeFromCell(oldCell, id);
+			}
+			positions.put(id, new double[] { x, y });
+			minCX = Math.min(minCX, index(x));
+			maxCX = Math.max(maxCX, index(x));
+			minCY = Math.min(minCY, index(y));
+			maxCY = Math.max(maxCY, index(y));
+			long c = cell(x, y);
+			Set<String> members = cells.get(c);
+			if (members == null) {
+				members = new HashSet<String>();
+				cells.put(c, members);
+			}
+			members.add(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String id) {
+		lock.writeLock().lock();
+		try {
+			double[] old = positions.remove(id);
+			if (old != null)
+				removeFromCell(cell(old[0], old[1]), id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// [x, y] 또는 위치를 모르면 null
+	public double[] position(String id) {
+		lock.readLock().lock();
+		try {
+			double[] p = positions.get(id);
+			return p == null ? null : new double[] { p[0], p[1] };
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// (x, y)에서 거리 radius 안에 있는 id들 (가까운 순)
+	public String[] radius(double x, double y, double radius) {
+		lock.readLock().lock();
+		try {
+			List<Hit> hits = new ArrayList<Hit>();
+			int fromCX = index(x - radius), toCX = index(x + radius);
+			int fromCY = index(y - radius), toCY = index(y + radius);
+			for (int cx = fromCX; cx <= toCX; cx++) {
+				for (int cy = fromCY; cy <= toCY; cy++)
+					collect(cx, cy, x, y, radius, hits);
+			}
+			return sorted(hits, hits.size());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// (x, y)에서 가장 가까운 k개
+	// 중심 셀에서 한 겹씩 넓혀 가다가 k개를 찾았고 다음 겹이 더 멀면 멈춘다
+	// 겹마다 테두리 셀(8 * ring 개)만 본다
+	public String[] nearest(double x, double y, int k) {
+		lock.readLock().lock();
+		try {
+			List<Hit> hits = new ArrayList<Hit>();
+			if (k <= 0 || positions.isEmpty())
+				return new String[0];
+
+			int cx0 = index(x), cy0 = index(y);
+			int maxRing = maxRing(cx0, cy0);
+			for (int ring = 0; ring <= maxRing; ring++) {
+				collectRing(cx0, cy0, ring, x, y, hits);
+				// ring 바깥 셀의 점은 적어도 ring * cellSize 만큼 떨어져 있다
+				if (hits.size() >= k && kthDistance(hits, k) <= ring * cellSize)
+					break;
+			}
+			return sorted(hits, k);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// polygon = {x1, y1, x2, y2, ...} 안에 있는 id들
+	public String[] inPolygon(double[] polygon) {
+		lock.readLock().lock();
+		try {
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = 0; i + 1 < polygon.length; i += 2) {
+				minX = Math.min(minX, polygon[i]);
+				maxX = Math.max(maxX, polygon[i]);
+				minY = Math.min(minY, polygon[i + 1]);
+				maxY = Math.max(maxY, polygon[i + 1]);
+			}
+
+			List<String> result = new ArrayList<String>();
+			for (int cx = index(minX); cx <= index(maxX); cx++) {
+				for (int cy = index(minY); cy <= index(maxY); cy++) {
+					Set<String> members = cells.get(key(cx, cy));
+					if (members == null)
+						continue;
+					for (String id : members) {
+						double[] p = positions.get(id);
+						if (Geometry.inPolygon(polygon, p[0], p[1]))
+							result.add(id);
+					}
+				}
+			}
+			return result.toArray(new String[result.size()]);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return positions.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void collect(int cx, int cy, double x, double y, double radius, List<Hit> hits) {
+		Set<String> members = cells.get(key(cx, cy));
+		if (members == null)
+			return;
+		for (String id : members) {
+			double[] p = positions.get(id);
+			double d = Math.hypot(p[0] - x, p[1] - y);
+			if (d <= radius)
+				hits.add(new Hit(id, d));
+		}
+	}
+
+	// 중심 셀에서 ring 겹 떨어진 테두리 : 위아래 줄 (모서리 포함), 그 사이의 왼쪽/오른쪽 열
+	private void collectRing(int cx0, int cy0, int ring, double x, double y, List<Hit> hits) {
+		if (ring == 0) {
+			collect(cx0, cy0, x, y, Double.MAX_VALUE, hits);
+			return;
+		}
+		for (int cx = cx0 - ring; cx <= cx0 + ring; cx++) {
+			collect(cx, cy0 - ring, x, y, Double.MAX_VALUE, hits);
+			collect(cx, cy0 + ring, x, y, Double.MAX_VALUE, hits);
+		}
+		for (int cy = cy0 - ring + 1; cy <= cy0 + ring - 1; cy++) {
+			collect(cx0 - ring, cy, x, y, Double.MAX_VALUE, hits);
+			collect(cx0 + ring, cy, x, y, Double.MAX_VALUE, hits);
+		}
+	}
+
+	private int maxRing(int cx0, int cy0) {
+		return Math.max(Math.max(Math.abs(minCX - cx0), Math.abs(maxCX - cx0)),
+				Math.max(Math.abs(minCY - cy0), Math.abs(maxCY - cy0)));
+	}
+
+	private static double kthDistance(List<Hit> hits, int k) {
+		List<Hit> copy = new ArrayList<Hit>(hits);
+		Collections.sort(copy, BY_DISTANCE);
+		return copy.get(k - 1).distance;
+	}
+
+	private static String[] sorted(List<Hit> hits, int k) {
+		Collections.sort(hits, BY_DISTANCE);
+		int n = Math.min(k, hits.size());
+		String[] ids = new String[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = hits.get(i).id;
+		return ids;
+	}
+
+	private void removeFromCell(long c, String id) {
+		Set<String> members = cells.get(c);
+		if (members == null)
+			return;
+		members.remove(id);
+		if (members.isEmpty())
+			cells.remove(c);
+	}
+
+	private int index(double v) {
+		return (int) Math.floor(v / cellSize);
+	}
+
+	private long cell(double x, double y) {
+		return key(index(x), index(y));
+	}
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+
+	@Override
+	public String toString() {
+		JSONObject obj = new JSONObject();
+		lock.readLock().lock();
+		try {
+			obj.put("cellSize", cellSize);
+			obj.put("entries", positions.size());
+			obj.put("cells", cells.size());
+		} finally {
+			lock.readLock().unlock();
+		}
+		return obj.toJSONString();
+	}
+
+	private static final Comparator<Hit> BY_DISTANCE = new Comparator<Hit>() {
+		@Override
+		public int compare(Hit a, Hit b) {
+			return Double.compare(a.distance, b.distance);
+		}
+	};
+
+	private static class Hit {
+		final String id;
+		final double distance;
+
+		Hit(String id, double distance) {
+			this.id = id;
+			this.distance = distance;
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package kgu.agent.demo.prolog;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.Configuration;
+
+// arbi_subscription.pl 연결부 : 구독 규칙을 (subscriber, id) 로 등록/해제한다
+// Prolog 쪽은 trigger predicate로 색인해서 assert된 triple의 predicate에 걸린 규칙만 실행한다
+public class SubscriptionRegistry {
+
+	// trigger predicate가 변수인 규칙 (모든 assert에 걸린다)
+	public static final String ANY_PREDICATE = "*";
+
+	private static final SubscriptionRegistry instance = new SubscriptionRegistry();
+
+	public static SubscriptionRegistry getInstance() {
+		return instance;
+	}
+
+	private final Map<String, Subscription> subscriptions = new LinkedHashMap<String, Subscription>();
+	private final Map<String, Set<String>> bySubscriber = new LinkedHashMap<String, Set<String>>();
+	private final Map<String, Set<String>> byPredicate = new LinkedHashMap<String, Set<String>>();
+	private long nextId = 1;
+	private boolean configured = false;
+
+	// id가 없는 구독에 줄 id
+	public synchronized String nextId(String subscriber) {
+		while (subscriptions.containsKey(key(subscriber, "" + nextId)))
+			nextId++;
+		return "" + nextId++;
+	}
+
+	// monitorClause : monitor(...) :- (...), 같은 subscriber와 id의 이전 규칙은 대체된다
+	// edgeTriggered : 결과 집합이 바뀔 때만 notify (Subscription.add / remove)
+	// policy : debounce, maxRate 등 전달 정책 (DeliveryPolicy)
+	public synchronized boolean subscribe(String subscriber, String id, String rule, String monitorClause,
+			boolean edgeTriggered, DeliveryPolicy policy) {
+		if (!configured)
+			configure();
+		String key = key(subscriber, id);
+		String goal = "arbi_subscription:subscription_add(" + quote(key) + ", (" + monitorClause + "), "
+				+ edgeTriggered + ", TriggerP)";
+		Map<String, Term> solution;
+		try {
+			solution = Query.oneSolution(goal);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (solution == null) {
+			System.out.println("ERROR : subscription_add failed : " + goal);
+			return false;
+		}
+
+		Term p = solution.get("TriggerP");
+		String predicate = p == null || p.isVariable() ? ANY_PREDICATE : p.name();
+		remove(key);
+		Subscription subscription = new Subscription(subscriber, id, rule, predicate, monitorClause, edgeTriggered,
+				policy);
+		subscriptions.put(key, subscription);
+		index(bySubscriber, subscriber).add(key);
+		index(byPredicate, predicate).add(key);
+		return true;
+	}
+
+	public synchronized boolean unsubscribe(String subscriber, String id) {
+		String key = key(subscriber, id);
+		if (!subscriptions.containsKey(key))
+			return false;
+		retract(key);
+		remove(key);
+		return true;
+	}
+
+	// subscriber가 떠날 때
+	public synchronized int unsubscribeAll(String subscriber) {
+		Set<String> keys = bySubscriber.get(subscriber);
+		if (keys == null)
+			return 0;
+		int n = 0;
+		for (String key : keys.toArray(new String[0])) {
+			retract(key);
+			remove(key);
+			n++;
+		}
+		return n;
+	}
+
+	public synchronized Subscription get(String subscriber, String id) {
+		return subscriptions.get(key(subscriber, id));
+	}
+
+	// key : arbi_subscription.pl 쪽 id (NotificationDispatcher가 받는 값)
+	public synchronized Subscription lookup(String key) {
+		return subscriptions.get(key);
+	}
+
+	// subscriber에게 남은 구독이 있는지
+	public synchronized boolean hasSubscriber(String subscriber) {
+		return bySubscriber.containsKey(subscriber);
+	}
+
+	public synchronized int size() {
+		return subscriptions.size();
+	}
+
+	// 구독이 볼 graph (Configuration.SUBSCRIPTION_GRAPHS)
+	private void configure() {
+		ArrayList<String> graphs = new ArrayList<String>();
+		for (String graph : Configuration.SUBSCRIPTION_GRAPHS.split(",")) {
+			if (!graph.trim().isEmpty())
+				graphs.add(quote(graph.trim()));
+		}
+		try {
+			configured = Query.hasSolution("arbi_subscription:subscription_graphs([" + String.join(", ", graphs) + "])");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.out.println("subscription graphs : " + (graphs.isEmpty() ? "all" : graphs));
+	}
+
+	// 여러 fact 조건을 가진 규칙의 arbi_rete.pl 네트워크 크기
+	public JSONObject getNetworkStatistics() {
+		JSONObject obj = new JSONObject();
+		try {
+			Map<String, Term> solution = Query.oneSolution("arbi_rete:rete_statistics(Alpha, Beta, Productions, Tokens)");
+			if (solution != null) {
+				obj.put("alphaNodes", solution.get("Alpha").intValue());
+				obj.put("betaNodes", solution.get("Beta").intValue());
+				obj.put("productions", solution.get("Productions").intValue());
+				obj.put("tokens", solution.get("Tokens").intValue());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return obj;
+	}
+
+	private void retract(String key) {
+		try {
+			Query.hasSolution("arbi_subscription:subscription_remove(" + quote(key) + ")");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void remove(String key) {
+		Subscription s = subscriptions.remove(key);
+		if (s == null)
+			return;
+		unindex(bySubscriber, s.getSubscriber(), key);
+		unindex(byPredicate, s.getPredicate(), key);
+	}
+
+	private static Set<String> index(Map<String, Set<String>> index, String name) {
+		Set<String> keys = index.get(name);
+		if (keys == null) {
+			keys = new LinkedHashSet<String>();
+			index.put(name, keys);
+		}
+		return keys;
+	}
+
+	private static void unindex(Map<String, Set<String>> index, String name, String key) {
+		Set<String> keys = index.get(name);
+		if (keys != null && keys.remove(key) && keys.isEmpty())
+			index.remove(name);
+	}
+
+	// Prolog 쪽 id : subscriber마다 id를 따로 매기므로 둘을 묶는다
+	static String key(String subscriber, String id) {
+		return subscriber + " " + id;
+	}
+
+	static String quote(String s) {
+		return "'" + s.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+	@Override
+	public synchronized String toString() {
+		JSONObject obj = new JSONObject();
+		obj.put("subscriptions", subscriptions.size());
+		JSONObject subscribers = new JSONObject();
+		for (Map.Entry<String, Set<String>> e : bySubscriber.entrySet())
+			subscribers.put(e.getKey(), e.getValue().size());
+		obj.put("subscribers", subscribers);
+		JSONObject predicates = new JSONObject();
+		for (Map.Entry<String, Set<String>> e : byPredicate.entrySet())
+			predicates.put(e.getKey(), e.getValue().size());
+		obj.put("predicates", predicates);
+		return obj.toJSONString();
+	}
+
+	public static class Subscription {
+		private final String subscriber;
+		private final String id;
+		private final String rule;
+		private final String predicate;
+		private final String monitorClause;
+		private final boolean edgeTriggered;
+		private final DeliveryPolicy policy;
+		// 지금까지 notify했고 아직 철회되지 않은 결과 (S P O)
+		private final Set<String> results = new HashSet<String>();
+
+		Subscription(String subscriber, String id, String rule, String predicate, String monitorClause,
+				boolean edgeTriggered, DeliveryPolicy policy) {
+			this.subscriber = subscriber;
+			this.id = id;
+			this.rule = rule;
+			this.predicate = predicate;
+			this.monitorClause = monitorClause;
+			this.edgeTriggered = edgeTriggered;
+			this.policy = policy;
+		}
+
+		// 결과 (S P O)가 맞았다, 새 결과면 true
+		public synchronized boolean add(String S, String P, String O) {
+			return results.add(S + " " + P + " " + O);
+		}
+
+		// 결과 (S P O)가 retract/update로 더 이상 맞지 않는다, notify했던 결과면 true
+		public synchronized boolean remove(String S, String P, String O) {
+			return results.remove(S + " " + P + " " + O);
+		}
+
+		public synchronized int getResultSize() {
+			return results.size();
+		}
+
+		public String getSubscriber() {
+			return subscriber;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getRule() {
+			return rule;
+		}
+
+		// trigger predicate IRI, 변수면 ANY_PREDICATE
+		public String getPredicate() {
+			return predicate;
+		}
+
+		public String getMonitorClause() {
+			return monitorClause;
+		}
+
+		public boolean isEdgeTriggered() {
+			return edgeTriggered;
+		}
+
+		public DeliveryPolicy getPolicy() {
+			return policy;
+		}
+
+		@Override
+		public String toString() {
+			JSONObject obj = new JSONObject();
+			obj.put("subscriber", subscriber);
+			obj.put("id", id);
+			obj.put("rule", rule);
+			obj.put("predicate", predicate);
+			obj.put("edgeTriggered", edgeTriggered);
+			obj.put("delivery", policy.toString());
+			return obj.toJSONString();
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package test;
+
+import java.io.FileWriter;
+import java.util.Map;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+// Geometry(Java kernel) 전후 비교 : 같은 임의 입력으로 Prolog 원본(*_pl)과 arbi_geometry(jpl_call)를 N번씩 부른다
+// 시간은 Prolog 안에서 잰다 (statistics(cputime), JPL 질의 한 번에 N번 호출) -> Java 쪽 질의 비용은 들어가지 않는다
+// java test.geometryBenchmark [호출 수 10000] [결과 파일 geometryBenchmark.json]
+// cm.geometry.native 기본값을 켜기 전에 geometryDiffTest와 함께 돌려서 결과를 남긴다
+public class geometryBenchmark {
+
+	// 이름, 입력을 만드는 goal (A에 인자 term), 원본 호출, kernel 호출
+	static final String[][] CASES = {
+			{ "rccd_hybrid",
+					"A = a(RX, RY, OX, OY, D), RX is random_float * 20 - 10, RY is random_float * 20 - 10, "
+							+ "OX is random_float * 20 - 10, OY is random_float * 20 - 10, D is random_float * 360",
+					"arbi_comp_spatial:rccd_hybrid_pl(RX, RY, OX, OY, D, 1.0, 0.6, _)",
+					"arbi_geometry:geometry_rccd_hybrid(RX, RY, OX, OY, D, 1.0, 0.6, _)" },
+			{ "rccd_cone",
+					"A = a(RX, RY, OX, OY, D), RX is random_float * 20 - 10, RY is random_float * 20 - 10, "
+							+ "OX is random_float * 20 - 10, OY is random_float * 20 - 10, D is random_float * 360",
+					"arbi_comp_spatial:rccd_cone_pl(RX, RY, OX, OY, D, 1.0, 0.6, _)",
+					"arbi_geometry:geometry_rccd_cone(RX, RY, OX, OY, D, 1.0, 0.6, _)" },
+			{ "vertex",
+					"A = a(X, Y, Z, C), X is random_float * 10 - 5, Y is random_float * 10 - 5, Z is random_float * 2, "
+							+ "C is random_float * 6.28 - 3.14",
+					"predicate:vertex_pl([X, Y, Z, 0.1, -0.1, C], [0.3, 0.2, 0.1], _)",
+					"arbi_geometry:geometry_vertex([X, Y, Z, 0.1, -0.1, C], [0.3, 0.2, 0.1], _)" } };
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		String output = args.length > 1 ? args[1] : "geometryBenchmark.json";
+
+		String t = "[cmProlog/prolog/init_isaac]";
+		System.out.println(t + " " + (Query.hasSolution(t) ? "succeeded" : "failed"));
+		Query.hasSolution("set_random(seed(0))");
+
+		JSONArray results = new JSONArray();
+		for (String[] c : CASES) {
+			// 첫 호출의 JVM/JIT 준비는 재지 않는다
+			time(c[1], c[2], 100);
+			time(c[1], c[3], 100);
+
+			double prolog = time(c[1], c[2], n);
+			double kernel = time(c[1], c[3], n);
+			JSONObject result = new JSONObject();
+			result.put("operation", c[0]);
+			result.put("calls", n);
+			result.put("prologMicrosPerCall", prolog * 1e6 / n);
+			result.put("nativeMicrosPerCall", kernel * 1e6 / n);
+			result.put("speedup", kernel == 0 ? 0 : prolog / kernel);
+			results.add(result);
+			System.out.println(result.toJSONString());
+		}
+
+		try {
+			FileWriter fw = new FileWriter(output);
+			fw.write(results.toJSONString());
+			fw.close();
+			System.out.println("written " + output);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	// n개 입력을 만든 뒤 call을 n번 부르는 데 걸린 cputime (초)
+	static double time(String input, String call, int n) {
+		String goal = "findall(A, (between(1, " + n + ", _), " + input + "), As), "
+				+ "statistics(cputime, T0), "
+				+ "forall(member(A, As), ignore(" + call + ")), "
+				+ "statistics(cputime, T1), T is T1 - T0";
+		Map<String, Term> solution = Query.oneSolution(goal);
+		if (solution == null) {
+			System.out.println("failed : " + goal);
+			return 0;
+		}
+		return solution.get("T").doubleValue();
+	}
+
+}
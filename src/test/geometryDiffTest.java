@@ -0,0 +1,204 @@
+package test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+
+import kgu.agent.demo.prolog.Geometry;
+
+// Geometry(Java)와 arbi_comp_spatial.pl / predicate_isaac.pl 의 Prolog 원본을 비교한다
+// RCCD는 방향 하나만이 아니라 맞는 방향 전체를 비교한다 : Prolog 쪽은 RCCD를 정해서 부르면 once(...) 의 모든 가지를 보므로
+//   findall(R, (member(R, 방향들), rccd_*_pl(..., R)), L) 이 Java의 결과 배열과 같아야 한다
+// 임의 입력으로는 원뿔 경계 (22.5도, 67.5도 ...) 나 접점 (Y1 =< CP) 가지에 거의 닿지 않으므로 경계 위의 고정 입력도 돌린다
+// java test.geometryDiffTest [trials] [seed]
+public class geometryDiffTest {
+
+	static final double EPSILON = 1e-9;
+
+	// 각 rccd_*_pl 의 once(...) 가지 순서
+	static final String HYBRID_REGIONS = "[identical, front, right, left, behind, behindRight, frontLeft, behindLeft, frontRight]";
+	static final String CONE_REGIONS = "[identical, behindRight, right, behind, behindLeft, left, frontRight, frontLeft, front]";
+
+	static int cases = 0;
+
+	static Random random;
+	static int mismatches = 0;
+
+	public static void main(String[] args) {
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0);
+
+		String t = "[cmProlog/prolog/init_isaac]";
+		System.out.println(t + " " + (Query.hasSolution(t) ? "succeeded" : "failed"));
+
+		boundaries();
+		System.out.println("boundary cases " + cases + ", mismatches " + mismatches);
+
+		for (int i = 0; i < trials; i++) {
+			double rx = uniform(-10, 10), ry = uniform(-10, 10);
+			double ox = uniform(-10, 10), oy = uniform(-10, 10);
+			double d = uniform(0, 360), rd = uniform(0.2, 2), rw = uniform(0.2, 2);
+			rccd(rx, ry, ox, oy, d, rd, rw);
+			vertexAndIntersect();
+		}
+		System.out.println("trials " + trials + ", mismatches " + mismatches);
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	// 로봇 (0, 0), 방향 0 (회전이 정확하다) 에서 경계 위의 점들
+	//   원뿔 경계 : 22.5도 + 45도 * k 방향의 점
+	//   상자 모서리 : Min/Max_RX, Min/Max_RY
+	//   접점 : find_front/right/left/behindPoint 의 CP
+	static void boundaries() {
+		double rd = 1.0, rw = 0.6;
+		double minRX = -0.5 * rd, maxRX = 0.5 * rd, minRY = -0.5 * rw, maxRY = 0.5 * rw;
+		double cpFront = m(112.5) * minRX + (0 - m(112.5) * 0);
+		double cpRight = (maxRY - (0 - m(22.5) * 0)) / m(22.5);
+		double cpLeft = (maxRY - (0 - m(157.5) * 0)) / m(157.5);
+		double cpBehind = m(292.5) * maxRX + (0 - m(292.5) * 0);
+
+		double[] xs = { minRX, maxRX, 0, -1, 1, cpRight, cpLeft, 2 * minRX, 2 * maxRX };
+		double[] ys = { minRY, maxRY, 0, -1, 1, cpFront, cpBehind, 2 * minRY, 2 * maxRY };
+		for (double x : xs) {
+			for (double y : ys)
+				rccd(0, 0, x, y, 0, rd, rw);
+		}
+
+		for (int k = 0; k < 16; k++) {
+			double degree = 22.5 * k;
+			for (double r : new double[] { 0.2, 1, 5 }) {
+				double x = r * Math.cos(Math.PI * degree / 180);
+				double y = r * Math.sin(Math.PI * degree / 180);
+				rccd(0, 0, x, y, 0, rd, rw);
+				// 로봇을 돌려도 같은 경계
+				rccd(1, -2, 1 + x, -2 + y, 0, rd, rw);
+			}
+		}
+	}
+
+	static void rccd(double rx, double ry, double ox, double oy, double d, double rd, double rw) {
+		cases++;
+		rccd("rccd_hybrid_pl", HYBRID_REGIONS, Geometry.rccdHybrid(rx, ry, ox, oy, d, rd, rw), rx, ry, ox, oy, d, rd, rw);
+		rccd("rccd_cone_pl", CONE_REGIONS, Geometry.rccdCone(rx, ry, ox, oy, d, rd, rw), rx, ry, ox, oy, d, rd, rw);
+	}
+
+	static void rccd(String predicate, String all, String[] regions, double rx, double ry, double ox, double oy,
+			double d, double rd, double rw) {
+		String args = rx + ", " + ry + ", " + ox + ", " + oy + ", " + d + ", " + rd + ", " + rw;
+		String java = Arrays.toString(regions);
+
+		// 정해 두고 부른 방향 전체
+		String goal = "findall(R, (member(R, " + all + "), arbi_comp_spatial:" + predicate + "(" + args + ", R)), L)";
+		Map<String, Term> solution = Query.oneSolution(goal);
+		String prolog = "fail";
+		if (solution != null) {
+			Term[] list = solution.get("L").toTermArray();
+			String[] names = new String[list.length];
+			for (int i = 0; i < list.length; i++)
+				names[i] = list[i].name();
+			prolog = Arrays.toString(names);
+		}
+		if (!java.equals(prolog))
+			mismatch(goal, java, prolog);
+
+		// 정하지 않고 부르면 첫 방향
+		goal = "arbi_comp_spatial:" + predicate + "(" + args + ", RCCD)";
+		solution = Query.oneSolution(goal);
+		String first = solution == null ? "fail" : solution.get("RCCD").name();
+		if (!(regions.length == 0 ? "fail" : regions[0]).equals(first))
+			mismatch(goal, regions.length == 0 ? "fail" : regions[0], first);
+	}
+
+	// getM/2
+	static double m(double degree) {
+		return Math.tan(Math.PI * degree / 180);
+	}
+
+	static void vertexAndIntersect() {
+		double[] spacePose = pose(), spaceSize = size();
+		double[] objectPose = pose(), objectSize = size();
+		// 절반은 손 공간 근처에 물체를 둔다
+		if (random.nextBoolean()) {
+			for (int i = 0; i < 3; i++)
+				objectPose[i] = spacePose[i] + uniform(-0.1, 0.1);
+		}
+
+		double[] space = Geometry.vertex(spacePose, spaceSize);
+		double[] object = Geometry.vertex(objectPose, objectSize);
+		if (!sameVertex(spacePose, spaceSize, space) || !sameVertex(objectPose, objectSize, object))
+			return;
+
+		double[] ratio = Geometry.intersectRatio(diagonal(space), diagonal(object));
+		String goal = "predicate:intersect_ratio_pl(" + points(space) + ", " + points(object) + ", Per)";
+		Map<String, Term> solution = Query.oneSolution(goal);
+		if (solution == null || ratio.length == 0) {
+			if ((solution == null) != (ratio.length == 0))
+				mismatch(goal, ratio.length == 0 ? "fail" : "" + ratio[0], solution == null ? "fail" : "" + solution.get("Per"));
+			return;
+		}
+		double per = solution.get("Per").doubleValue();
+		if (Math.abs(per - ratio[0]) > EPSILON)
+			mismatch(goal, "" + ratio[0], "" + per);
+	}
+
+	static boolean sameVertex(double[] pose, double[] size, double[] java) {
+		String goal = "predicate:vertex_pl(" + list(pose) + ", " + list(size) + ", V)";
+		Map<String, Term> solution = Query.oneSolution(goal);
+		if (solution == null) {
+			mismatch(goal, "vertex", "fail");
+			return false;
+		}
+		Term[] points = solution.get("V").toTermArray();
+		for (int i = 0; i < 8; i++) {
+			Term[] xyz = points[i].toTermArray();
+			for (int r = 0; r < 3; r++) {
+				if (Math.abs(xyz[r].doubleValue() - java[i * 3 + r]) > EPSILON) {
+					mismatch(goal, "" + java[i * 3 + r], "" + xyz[r]);
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	static double[] pose() {
+		return new double[] { uniform(-5, 5), uniform(-5, 5), uniform(0, 2), uniform(-0.3, 0.3), uniform(-0.3, 0.3),
+				uniform(-Math.PI, Math.PI) };
+	}
+
+	static double[] size() {
+		return new double[] { uniform(0.05, 0.5), uniform(0.05, 0.5), uniform(0.05, 0.5) };
+	}
+
+	static double[] diagonal(double[] vertice) {
+		return new double[] { vertice[0], vertice[1], vertice[2], vertice[18], vertice[19], vertice[20] };
+	}
+
+	// {x1, y1, z1, x2, ...} -> [[x1, y1, z1], [x2, ...], ...]
+	static String points(double[] vertice) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < vertice.length; i += 3)
+			sb.append(i == 0 ? "" : ", ").append(list(new double[] { vertice[i], vertice[i + 1], vertice[i + 2] }));
+		return sb.append("]").toString();
+	}
+
+	static String list(double[] values) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < values.length; i++)
+			sb.append(i == 0 ? "" : ", ").append(values[i]);
+		return sb.append("]").toString();
+	}
+
+	static double uniform(double min, double max) {
+		return min + (max - min) * random.nextDouble();
+	}
+
+	static void mismatch(String goal, String java, String prolog) {
+		mismatches++;
+		System.out.println("MISMATCH " + goal + " java=" + java + " prolog=" + prolog);
+	}
+
+}
@@ -1,5 +1,6 @@
 package test;
 
+import kgu.agent.demo.prolog.NamespaceCodec;
 import kr.ac.uos.ai.arbi.agent.ArbiAgent;
 import kr.ac.uos.ai.arbi.model.Binding;
 import kr.ac.uos.ai.arbi.model.BindingFactory;
@@ -107,15 +108,7 @@ public class glTest extends ArbiAgent {
 	}
 
 	public static String prefixToURI(String s) {
-
-		s = s.replaceAll("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
-		s = s.replaceAll("knowrob:", "http://knowrob.org/kb/knowrob.owl#");
-		s = s.replaceAll("arbi:", "http://www.arbi.com/arbi#");
-		s = s.replaceAll("test_sp:", "http://knowrob.org/kb/test_comp_spatial.owl#");
-
-		s = "'" + s + "'";
-
-		return s;
+		return "'" + NamespaceCodec.getInstance().expand(s) + "'";
 	}
 	
 	
@@ -0,0 +1,106 @@
+package test;
+
+import kgu.agent.demo.paser.MonitorRuleCompiler;
+
+// MonitorRuleCompiler의 normalize / quoteValues / compile 을 ContextMonitorParser.example_* 규칙과
+// 변수 predicate, notify 여러 개 같은 경우로 확인한다 (Prolog 없이 돈다)
+// java test.monitorRuleCompilerTest
+public class monitorRuleCompilerTest {
+
+	static int failures = 0;
+
+	// ContextMonitorParser.example_1 ~ example_3
+	static final String EXAMPLE_1 = "(rule "
+			+ "\n\t(fact (rdf:type $x arbi:LocationPerception)) "
+			+ "\n\t(fact (knowrob:objectActedOn $x arbi:turtlebot01)) "
+			+ "\n--> "
+			+ "\n\t(notify (rdf:type $x arbi:LocationPerception))"
+			+ "\n)";
+	static final String EXAMPLE_2 = "(rule "
+			+ "\n\t(fact (rdf:type $x arbi:locationPerception)) "
+			+ "\n\t(fact (knowrob:objectActedOn $x arbi:turtlebot01)) "
+			+ "\n\t(expression (arbi:locatedInRoom arbi:turtlebot01 knowrob:robby-room)) "
+			+ "\n--> "
+			+ "\n\t(notify (arbi:isArrivedDestination arbi:turtlebot01 'true'))"
+			+ "\n)";
+	static final String EXAMPLE_3 = "(rule "
+			+ "\n\t(fact (arbi:locatedInRoom arbi:turtlebot01 $Room)) "
+			+ "\n--> "
+			+ "\n\t(notify (arbi:locatedInRoom arbi:turtlebot01 $Room)) "
+			+ "\n)";
+
+	public static void main(String[] args) {
+		// normalize : 공백 정리, 따옴표 안은 그대로, SubscribeAction이 (id 앞에서 잘라 모자란 ')' 채우기
+		check("normalize", MonitorRuleCompiler.normalize(EXAMPLE_1),
+				"(rule (fact (rdf:type $x arbi:LocationPerception)) (fact (knowrob:objectActedOn $x arbi:turtlebot01)) --> (notify (rdf:type $x arbi:LocationPerception)))");
+		check("normalize quote", MonitorRuleCompiler.normalize("(rule  (fact (p $x \"a  b\"))  --> (notify (p $x 'c  d'))"),
+				"(rule (fact (p $x \"a  b\")) --> (notify (p $x 'c  d')))");
+
+		// quoteValues : 값 위치 토큰만 "..." 로, 이름/변수/숫자/--> 는 그대로, 이름 자리 $p 는 VARIABLE_NAME
+		check("quoteValues", MonitorRuleCompiler.quoteValues(MonitorRuleCompiler.normalize(EXAMPLE_2)),
+				"(rule (fact (rdf:type $x \"arbi:locationPerception\")) (fact (knowrob:objectActedOn $x \"arbi:turtlebot01\")) "
+						+ "(expression (arbi:locatedInRoom \"arbi:turtlebot01\" \"knowrob:robby-room\")) --> "
+						+ "(notify (arbi:isArrivedDestination \"arbi:turtlebot01\" \"'true'\")))");
+		check("quoteValues number", MonitorRuleCompiler.quoteValues("(fact (p $x 0.5))"), "(fact (p $x 0.5))");
+		check("quoteValues variable predicate", MonitorRuleCompiler.quoteValues("(fact ($p $s $o))"),
+				"(fact (__var__p $s $o))");
+
+		MonitorRuleCompiler compiler = new MonitorRuleCompiler(16);
+		for (String rule : new String[] { EXAMPLE_1, EXAMPLE_2, EXAMPLE_3 }) {
+			String monitorRule = compiler.compile(rule);
+			System.out.println(monitorRule);
+			if (monitorRule == null || !balanced(monitorRule)) {
+				System.out.println("FAIL compile : " + rule);
+				failures++;
+			}
+		}
+
+		// 변수 predicate : (fact ($p S O)) -> assert(S, P, O)
+		String variable = compiler.compile("(rule (fact ($p arbi:turtlebot01 $o)) --> (notify ($p arbi:turtlebot01 $o)))");
+		System.out.println(variable);
+		contains("variable predicate head", variable, "monitor(assert('http://www.arbi.com/ontologies/arbi.owl#turtlebot01', P, O), DB)");
+		contains("variable predicate notify", variable, "term_to_atom(P, PA)");
+
+		// notify가 둘이면 거절
+		String twice = compiler.compile("(rule (fact (rdf:type $x arbi:LocationPerception)) --> "
+				+ "(notify (rdf:type $x arbi:LocationPerception)) (notify (knowrob:objectActedOn $x arbi:turtlebot01)))");
+		check("two notify actions", String.valueOf(twice), "null");
+
+		// 캐시 : 공백만 다른 규칙은 같은 키
+		compiler.compile(EXAMPLE_3.replace("\n\t", "  "));
+		System.out.println(compiler);
+
+		System.out.println(failures == 0 ? "all passed" : failures + " failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	static void check(String name, String actual, String expected) {
+		if (!expected.equals(actual)) {
+			System.out.println("FAIL " + name + "\n  expected : " + expected + "\n  actual   : " + actual);
+			failures++;
+		}
+	}
+
+	static void contains(String name, String actual, String expected) {
+		if (actual == null || !actual.contains(expected)) {
+			System.out.println("FAIL " + name + "\n  expected to contain : " + expected + "\n  actual : " + actual);
+			failures++;
+		}
+	}
+
+	// 절의 괄호가 맞는지 (따옴표 안은 빼고)
+	static boolean balanced(String clause) {
+		int depth = 0;
+		boolean quoted = false;
+		for (char ch : clause.toCharArray()) {
+			if (ch == '\'')
+				quoted = !quoted;
+			else if (!quoted && ch == '(')
+				depth++;
+			else if (!quoted && ch == ')' && --depth < 0)
+				return false;
+		}
+		return depth == 0;
+	}
+
+}
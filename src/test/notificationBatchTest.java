@@ -0,0 +1,85 @@
+package test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import kgu.agent.demo.action.NotificationOutbox;
+import kgu.agent.demo.action.NotificationSink;
+
+// NotificationOutbox : 구독자 하나에게 notify 1000개 -> batchMax 50 이면 메시지 20개
+// broker 없이 sink에서 메시지와 그 안의 notify 수, 보낸 thread를 센다
+// java test.notificationBatchTest [notify 수 1000] [batchMax 50] [window ms 50]
+public class notificationBatchTest {
+
+	static final String SUBSCRIBER = "batchTest";
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int batchMax = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		long window = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+		final AtomicInteger messages = new AtomicInteger();
+		final AtomicLong notifications = new AtomicLong();
+		final AtomicInteger callerThread = new AtomicInteger();
+		final Thread caller = Thread.currentThread();
+
+		NotificationOutbox outbox = new NotificationOutbox(new NotificationSink() {
+			@Override
+			public void onNotification(String subscriber, String notification) {
+				messages.incrementAndGet();
+				notifications.addAndGet(count(notification));
+				if (Thread.currentThread() == caller)
+					callerThread.incrementAndGet();
+			}
+		}, window, batchMax, n);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			outbox.onNotification(SUBSCRIBER, "(robotPosition \"AMR_LIFT1\" \"" + i + "\")");
+		long enqueueMicros = (System.nanoTime() - start) / 1000;
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (notifications.get() < n && System.currentTimeMillis() < deadline)
+			sleep(5);
+		sleep((int) window * 2);
+
+		int expected = (n + batchMax - 1) / batchMax;
+		System.out.println("notifications : " + n + " -> messages : " + messages.get() + " (expected " + expected + ")");
+		System.out.println("delivered : " + notifications.get() + ", sent on caller thread : " + callerThread.get());
+		System.out.println("enqueue : " + enqueueMicros + " us");
+		System.out.println(outbox);
+
+		outbox.remove(SUBSCRIBER);
+		sleep(50);
+		System.out.println("after remove : " + outbox);
+
+		// window 0 이면 창 없이 그때 queue에 있는 만큼 보내므로 메시지 수는 보지 않는다
+		boolean passed = (window <= 0 || messages.get() == expected) && notifications.get() == n && callerThread.get() == 0
+				&& !outbox.toString().contains(SUBSCRIBER);
+		System.out.println(passed ? "passed" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	// (notifyBatch (..) (..)) 안의 notify 수, 하나면 1
+	static int count(String message) {
+		if (!message.startsWith("(" + NotificationOutbox.BATCH))
+			return 1;
+		int depth = 0;
+		int n = 0;
+		for (char ch : message.toCharArray()) {
+			if (ch == '(' && ++depth == 2)
+				n++;
+			else if (ch == ')')
+				depth--;
+		}
+		return n;
+	}
+
+	static void sleep(int n) {
+		try {
+			Thread.sleep(n);
+		} catch (Exception e) {
+		}
+	}
+
+}
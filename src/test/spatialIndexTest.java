@@ -0,0 +1,158 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import kgu.agent.demo.prolog.Geometry;
+import kgu.agent.demo.prolog.SpatialIndex;
+
+// SpatialIndex 의 radius / nearest / inPolygon 을 전체를 다 보는 계산과 비교한다 (Prolog 없이 돈다)
+// 음수 좌표, 셀 경계 위의 점, 인구보다 큰 k, 오목한 다각형, 셀을 옮기는 update / remove 를 넣는다
+// nearest 는 거리가 같은 점의 순서가 정해지지 않으므로 id 대신 거리 열을 비교한다
+// java test.spatialIndexTest [trials] [seed]
+public class spatialIndexTest {
+
+	static final double CELL = 2.0;
+	static final double EPSILON = 1e-9;
+
+	static Random random;
+	static int checks = 0;
+	static int mismatches = 0;
+
+	static SpatialIndex index = new SpatialIndex(CELL);
+	static Map<String, double[]> truth = new HashMap<String, double[]>();
+
+	public static void main(String[] args) {
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0);
+
+		// 빈 색인
+		check("empty nearest", index.nearest(0, 0, 3).length == 0);
+		check("empty radius", index.radius(0, 0, 10).length == 0);
+
+		// 셀 경계 위 (CELL 의 배수, 음수 포함) 와 그 바로 옆
+		int n = 0;
+		for (int i = -3; i <= 3; i++) {
+			put("edge" + n++, i * CELL, -i * CELL);
+			put("edge" + n++, i * CELL - EPSILON, i * CELL + EPSILON);
+			put("edge" + n++, i * CELL, 0.5 * CELL);
+		}
+		compareAll("edges");
+
+		for (int i = 0; i < 100; i++)
+			put("p" + i, uniform(-25, 25), uniform(-25, 25));
+		// 멀리 떨어진 점 하나 (탐색이 여러 겹을 넘어가야 한다)
+		put("far", -180, 95);
+		compareAll("random");
+
+		for (int t = 0; t < trials; t++) {
+			// 셀을 옮기거나 같은 셀 안에서 움직이거나 지운다
+			String id = "p" + random.nextInt(100);
+			int action = random.nextInt(4);
+			if (action == 0) {
+				index.remove(id);
+				truth.remove(id);
+			} else if (action == 1 && truth.containsKey(id)) {
+				double[] p = truth.get(id);
+				put(id, p[0] + uniform(-0.1, 0.1), p[1] + uniform(-0.1, 0.1));
+			} else {
+				put(id, uniform(-25, 25), uniform(-25, 25));
+			}
+			compareAll("trial " + t);
+		}
+
+		System.out.println("checks " + checks + ", mismatches " + mismatches);
+		System.out.println(mismatches == 0 ? "all passed" : "failed");
+		System.exit(mismatches == 0 ? 0 : 1);
+	}
+
+	static void put(String id, double x, double y) {
+		index.update(id, x, y);
+		truth.put(id, new double[] { x, y });
+	}
+
+	static void compareAll(String step) {
+		double[][] points = { { 0, 0 }, { -CELL, -CELL }, { CELL * 0.5, -CELL * 3 },
+				{ uniform(-30, 30), uniform(-30, 30) }, { uniform(-30, 30), uniform(-30, 30) } };
+		for (double[] q : points) {
+			for (double r : new double[] { 0, CELL, 2.5 * CELL, 40 })
+				radius(step, q[0], q[1], r);
+			for (int k : new int[] { 1, 2, 7, truth.size(), truth.size() + 5 })
+				nearest(step, q[0], q[1], k);
+		}
+		// 볼록 사각형, 오목한 L자, 음수 영역의 삼각형
+		polygon(step, new double[] { -5, -5, 5, -5, 5, 5, -5, 5 });
+		polygon(step, new double[] { -10, -10, 0, -10, 0, 2, 8, 2, 8, 8, -10, 8 });
+		polygon(step, new double[] { -20, -20, -2, -18, -14, -3 });
+	}
+
+	static void radius(String step, double x, double y, double r) {
+		List<String> expected = new ArrayList<String>();
+		for (Map.Entry<String, double[]> e : truth.entrySet()) {
+			if (distance(e.getValue(), x, y) <= r)
+				expected.add(e.getKey());
+		}
+		String[] actual = index.radius(x, y, r);
+		check(step + " radius(" + x + ", " + y + ", " + r + ")", sameSet(expected, actual) && ascending(actual, x, y));
+	}
+
+	static void nearest(String step, double x, double y, int k) {
+		double[] all = new double[truth.size()];
+		int i = 0;
+		for (double[] p : truth.values())
+			all[i++] = distance(p, x, y);
+		Arrays.sort(all);
+		double[] expected = Arrays.copyOf(all, Math.min(k, all.length));
+
+		String[] ids = index.nearest(x, y, k);
+		double[] actual = new double[ids.length];
+		for (i = 0; i < ids.length; i++)
+			actual[i] = distance(truth.get(ids[i]), x, y);
+		check(step + " nearest(" + x + ", " + y + ", " + k + ")", Arrays.equals(expected, actual));
+	}
+
+	static void polygon(String step, double[] polygon) {
+		List<String> expected = new ArrayList<String>();
+		for (Map.Entry<String, double[]> e : truth.entrySet()) {
+			if (Geometry.inPolygon(polygon, e.getValue()[0], e.getValue()[1]))
+				expected.add(e.getKey());
+		}
+		check(step + " inPolygon" + Arrays.toString(polygon), sameSet(expected, index.inPolygon(polygon)));
+	}
+
+	static boolean sameSet(List<String> expected, String[] actual) {
+		List<String> a = new ArrayList<String>(Arrays.asList(actual));
+		List<String> e = new ArrayList<String>(expected);
+		java.util.Collections.sort(a);
+		java.util.Collections.sort(e);
+		return a.equals(e);
+	}
+
+	static boolean ascending(String[] ids, double x, double y) {
+		for (int i = 1; i < ids.length; i++) {
+			if (distance(truth.get(ids[i - 1]), x, y) > distance(truth.get(ids[i]), x, y))
+				return false;
+		}
+		return true;
+	}
+
+	static double distance(double[] p, double x, double y) {
+		return Math.hypot(p[0] - x, p[1] - y);
+	}
+
+	static void check(String what, boolean ok) {
+		checks++;
+		if (!ok) {
+			mismatches++;
+			System.out.println("mismatch : " + what);
+		}
+	}
+
+	static double uniform(double from, double to) {
+		return from + (to - from) * random.nextDouble();
+	}
+}
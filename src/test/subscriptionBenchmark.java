@@ -0,0 +1,243 @@
+package test;
+
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jpl7.Query;
+import org.jpl7.Term;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import kgu.agent.demo.action.LatestPerceptionAction;
+import kgu.agent.demo.action.NotificationDispatcher;
+import kgu.agent.demo.action.NotificationSink;
+import kgu.agent.demo.action.SubscribeAction;
+import kgu.agent.demo.actionArgument.LatestPerceptionArgument;
+import kgu.agent.demo.actionArgument.SubscribeArgument;
+import kgu.agent.demo.prolog.SubscriptionRegistry;
+
+// 구독 수에 따른 monitor 성능
+// 구독 수를 10, 100, 1000 ... 으로 늘려 가며 SubscribeAction으로 가짜 구독을 넣고,
+// LatestPerceptionAction으로 robotPosition perception을 흘려서
+//   perception/assert 처리량, notify 지연 (perception 시작 -> NotificationSink 도착) 백분위, 메모리
+// 를 재고 구독 수마다 JSON 한 줄씩 출력, 끝나면 배열로 파일에 쓴다
+//
+// java test.subscriptionBenchmark [구독 수 "10,100,1000"] [단계마다 perception 수 500] [결과 파일 subscriptionBenchmark.json]
+// broker 없이 NotificationDispatcher에 sink를 바로 붙인다 (NotificationOutbox의 batch 창은 재지 않는다)
+public class subscriptionBenchmark {
+
+	static final String SUBSCRIBER = "benchmark";
+	// robotPosition 하나가 assert하는 triple 수 (LatestPerceptionAction)
+	static final int TRIPLES_PER_PERCEPTION = 8;
+	static final int WARMUP = 50;
+	static final long TIMEOUT = 30000;
+
+	static final Pattern PERCEPTION = Pattern.compile("visualRobotBodyPerception(\\d+)");
+
+	static PrintStream out = System.out;
+	static PrintStream quiet = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	// perception 번호 -> 시작 시각 (ns), 재는 구간 밖이면 0
+	static long[] started;
+	static final AtomicLong received = new AtomicLong();
+	static final ArrayList<Long> latencies = new ArrayList<Long>();
+
+	static LatestPerceptionAction perceptionAction = new LatestPerceptionAction();
+	static SubscribeAction subscribeAction = new SubscribeAction();
+	static int perceptions = 0;
+
+	// 로봇마다 걸린 구독 수
+	static int lift1 = 0;
+	static int lift2 = 0;
+
+	public static void main(String[] args) {
+		String[] levels = (args.length > 0 ? args[0] : "10,100,1000").split(",");
+		int perLevel = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		String output = args.length > 2 ? args[2] : "subscriptionBenchmark.json";
+
+		started = new long[levels.length * (perLevel + WARMUP) + 1];
+
+		String t = "[cmProlog/prolog/init_isaac]";
+		out.println(t + " " + (Query.hasSolution(t) ? "succeeded" : "failed"));
+
+		NotificationDispatcher.getInstance().start(new NotificationSink() {
+			@Override
+			public void onNotification(String subscriber, String notification) {
+				long now = System.nanoTime();
+				Matcher m = PERCEPTION.matcher(notification);
+				if (!m.find())
+					return;
+				int n = Integer.parseInt(m.group(1));
+				if (n < started.length && started[n] != 0) {
+					synchronized (latencies) {
+						latencies.add(now - started[n]);
+					}
+					received.incrementAndGet();
+				}
+			}
+		});
+
+		JSONArray results = new JSONArray();
+		int subscriptions = 0;
+		for (String level : levels) {
+			int target = Integer.parseInt(level.trim());
+
+			System.setOut(quiet);
+			long subscribeStart = System.nanoTime();
+			int added = target - subscriptions;
+			for (; subscriptions < target; subscriptions++)
+				subscribe(subscriptions);
+			long subscribeNanos = System.nanoTime() - subscribeStart;
+
+			replay(WARMUP, false);
+			waitIdle();
+
+			received.set(0);
+			synchronized (latencies) {
+				latencies.clear();
+			}
+			long expected = 0;
+			for (int i = 0; i < perLevel; i++)
+				expected += (perceptions + 1 + i) % 2 == 1 ? lift1 : lift2;
+
+			long replayNanos = replay(perLevel, true);
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while (received.get() < expected && System.currentTimeMillis() < deadline)
+				sleep(5);
+			System.setOut(out);
+
+			JSONObject result = measure(subscriptions, perLevel, replayNanos, expected);
+			result.put("subscribeMicros", added == 0 ? 0 : subscribeNanos / 1000 / added);
+			results.add(result);
+			out.println(result.toJSONString());
+		}
+
+		SubscriptionRegistry.getInstance().unsubscribeAll(SUBSCRIBER);
+
+		try {
+			FileWriter fw = new FileWriter(output);
+			fw.write(results.toJSONString());
+			fw.close();
+			out.println("written " + output);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	// i번째 구독 : 셋 중 하나는 두 fact 규칙 (arbi_rete), 나머지는 AMR_Lift01/02 를 번갈아 본다
+	static void subscribe(int i) {
+		String rule;
+		if (i % 3 == 2) {
+			rule = "(rule (fact (rdf:type $p knowrob:VisualRobotBodyPerception)) "
+					+ "(fact (knowrob:objectActedOn $p arbi:AMR_Lift02)) "
+					+ "--> (notify (knowrob:objectActedOn $p arbi:AMR_Lift02)) ";
+			lift2++;
+		} else if (i % 2 == 0) {
+			rule = "(rule (fact (knowrob:objectActedOn $p arbi:AMR_Lift01)) "
+					+ "--> (notify (knowrob:objectActedOn $p arbi:AMR_Lift01)) ";
+			lift1++;
+		} else {
+			rule = "(rule (fact (knowrob:objectActedOn $p arbi:AMR_Lift02)) "
+					+ "--> (notify (knowrob:objectActedOn $p arbi:AMR_Lift02)) ";
+			lift2++;
+		}
+		rule += "(trigger \"level\") (id b" + i + "))";
+
+		Object result = subscribeAction.execute(new SubscribeArgument(SUBSCRIBER, rule));
+		if (!String.valueOf(result).contains("success")) {
+			out.println("subscribe failed : " + rule + " " + result);
+			if (i % 3 == 2 || i % 2 == 1)
+				lift2--;
+			else
+				lift1--;
+		}
+	}
+
+	// perception 번호가 홀수면 AMR_LIFT1, 짝수면 AMR_LIFT2
+	static long replay(int n, boolean measured) {
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			perceptions++;
+			String robot = perceptions % 2 == 1 ? "AMR_LIFT1" : "AMR_LIFT2";
+			double x = (perceptions % 100) * 0.1;
+			double y = (perceptions % 37) * 0.1;
+			if (measured && perceptions < started.length)
+				started[perceptions] = System.nanoTime();
+			perceptionAction.execute(new LatestPerceptionArgument("(robotPosition \"" + robot + "\" \"" + x
+					+ "\" \"" + y + "\")"));
+		}
+		return System.nanoTime() - start;
+	}
+
+	static void waitIdle() {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (NotificationDispatcher.getInstance().getQueueSize() > 0 && System.currentTimeMillis() < deadline)
+			sleep(5);
+	}
+
+	static JSONObject measure(int subscriptions, int perLevel, long replayNanos, long expected) {
+		JSONObject result = new JSONObject();
+		result.put("subscriptions", subscriptions);
+		result.put("perceptions", perLevel);
+		double seconds = replayNanos / 1e9;
+		result.put("perceptionsPerSecond", perLevel / seconds);
+		result.put("assertsPerSecond", perLevel * TRIPLES_PER_PERCEPTION / seconds);
+		result.put("expected", expected);
+		result.put("received", received.get());
+
+		long[] sorted;
+		synchronized (latencies) {
+			sorted = new long[latencies.size()];
+			for (int i = 0; i < sorted.length; i++)
+				sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+		result.put("latencyP50Micros", percentile(sorted, 50));
+		result.put("latencyP90Micros", percentile(sorted, 90));
+		result.put("latencyP99Micros", percentile(sorted, 99));
+		result.put("latencyMaxMicros", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000);
+
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		result.put("javaHeapBytes", runtime.totalMemory() - runtime.freeMemory());
+		try {
+			Map<String, Term> solution = Query.oneSolution("statistics(globalused, G), statistics(heapused, H), rdf_statistics(triples(T))");
+			if (solution != null) {
+				result.put("prologGlobalBytes", solution.get("G").longValue());
+				result.put("prologHeapBytes", solution.get("H").longValue());
+				result.put("triples", solution.get("T").longValue());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		result.put("rete", SubscriptionRegistry.getInstance().getNetworkStatistics());
+		return result;
+	}
+
+	static long percentile(long[] sorted, int p) {
+		if (sorted.length == 0)
+			return 0;
+		int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1000;
+	}
+
+	static void sleep(int n) {
+		try {
+			Thread.sleep(n);
+		} catch (Exception e) {
+		}
+	}
+
+}